@@ -0,0 +1,40 @@
+package nl.thedutchruben.databaseAnotations.orm.annotations;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares an index in {@link Table#indexes()}; created together with the table.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({})
+public @interface Index {
+    /**
+     * The name of the index. Defaults to idx_ (or uk_ for unique indexes), the table name and the columns.
+     */
+    String name() default "";
+    
+    /**
+     * The indexed columns, comma separated, each optionally followed by ASC or DESC.
+     * Field names are accepted in place of column names.
+     */
+    String columnList();
+    
+    /**
+     * Whether the index is unique.
+     */
+    boolean unique() default false;
+    
+    /**
+     * Condition for a partial index, e.g. {@code "active = TRUE"}. Ignored by dialects without
+     * partial indexes, except on unique indexes, where that is a mapping error.
+     */
+    String where() default "";
+    
+    /**
+     * Extra columns stored in the index so queries can be answered from the index alone.
+     * Rendered as INCLUDE on PostgreSQL; other dialects append them to the key of non-unique indexes.
+     */
+    String[] include() default {};
+}
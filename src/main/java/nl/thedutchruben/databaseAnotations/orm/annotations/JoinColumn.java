@@ -42,7 +42,18 @@ public @interface JoinColumn {
     boolean updatable() default true;
     
     /**
-     * The foreign key constraint definition.
+     * The name of the foreign key constraint, {@code fk_<table>_<column>} by default.
+     * Use {@link #NO_CONSTRAINT} to create the column without a constraint.
      */
     String foreignKey() default "";
+    
+    /**
+     * Whether the schema generator creates an index on the foreign key column.
+     */
+    boolean index() default true;
+    
+    /**
+     * Value of {@link #foreignKey()} that suppresses the foreign key constraint.
+     */
+    String NO_CONSTRAINT = "NONE";
 }
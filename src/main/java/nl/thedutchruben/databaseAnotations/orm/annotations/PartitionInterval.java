@@ -0,0 +1,17 @@
+package nl.thedutchruben.databaseAnotations.orm.annotations;
+
+/**
+ * Defines the time span covered by each partition of a range partitioned table.
+ */
+public enum PartitionInterval {
+    DAY,
+    
+    /**
+     * Weeks starting on Monday.
+     */
+    WEEK,
+    
+    MONTH,
+    
+    YEAR
+}
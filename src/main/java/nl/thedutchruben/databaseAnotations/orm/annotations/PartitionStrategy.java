@@ -0,0 +1,21 @@
+package nl.thedutchruben.databaseAnotations.orm.annotations;
+
+/**
+ * Defines how the rows of a partitioned table are distributed over its partitions.
+ */
+public enum PartitionStrategy {
+    /**
+     * One partition per time interval of a date or timestamp column.
+     */
+    RANGE,
+    
+    /**
+     * One partition per listed value of the column.
+     */
+    LIST,
+    
+    /**
+     * A fixed number of partitions chosen by a hash of the column.
+     */
+    HASH
+}
@@ -0,0 +1,50 @@
+package nl.thedutchruben.databaseAnotations.orm.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares that the entity's table is partitioned by one column.
+ * Dialects without partitioning support create the table unpartitioned.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Partitioned {
+    /**
+     * The field or column name of the partition key.
+     */
+    String column();
+    
+    /**
+     * How rows are distributed over the partitions.
+     */
+    PartitionStrategy strategy() default PartitionStrategy.RANGE;
+    
+    /**
+     * The time span of each partition, for {@link PartitionStrategy#RANGE}.
+     */
+    PartitionInterval interval() default PartitionInterval.MONTH;
+    
+    /**
+     * The number of partitions created ahead of the current interval, for {@link PartitionStrategy#RANGE}.
+     */
+    int premake() default 3;
+    
+    /**
+     * The number of past intervals to keep, for {@link PartitionStrategy#RANGE}. Older partitions
+     * are removed by the partition manager; 0 keeps all of them.
+     */
+    int retention() default 0;
+    
+    /**
+     * The values that each get their own partition, for {@link PartitionStrategy#LIST}.
+     */
+    String[] values() default {};
+    
+    /**
+     * The number of partitions, for {@link PartitionStrategy#HASH}.
+     */
+    int partitions() default 4;
+}
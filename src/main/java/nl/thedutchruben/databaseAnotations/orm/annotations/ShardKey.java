@@ -0,0 +1,16 @@
+package nl.thedutchruben.databaseAnotations.orm.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the field whose value decides the shard an entity is stored on.
+ * May be placed on a column or on a ManyToOne relationship, in which case the
+ * primary key of the related entity is used.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface ShardKey {
+}
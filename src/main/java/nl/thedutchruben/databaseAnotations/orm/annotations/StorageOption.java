@@ -0,0 +1,28 @@
+package nl.thedutchruben.databaseAnotations.orm.annotations;
+
+/**
+ * Table storage hints. Each is applied by the databases that support it and ignored by the others.
+ */
+public enum StorageOption {
+    /**
+     * PostgreSQL: skip the write-ahead log. Faster writes, but the table is emptied after a crash
+     * and not replicated.
+     */
+    UNLOGGED,
+    
+    /**
+     * SQLite: store rows in the primary key's B-tree instead of by rowid. Requires a primary key
+     * that is not generated.
+     */
+    WITHOUT_ROWID,
+    
+    /**
+     * SQLite: enforce the declared column types.
+     */
+    STRICT,
+    
+    /**
+     * MySQL: store rows with {@code ROW_FORMAT=COMPRESSED}.
+     */
+    COMPRESSED
+}
@@ -25,4 +25,19 @@ public @interface Table {
      * The schema of the table.
      */
     String schema() default "";
+    
+    /**
+     * Indexes to create together with the table.
+     */
+    Index[] indexes() default {};
+    
+    /**
+     * Storage hints for the table, ignored by databases that do not support them.
+     */
+    StorageOption[] storage() default {};
+    
+    /**
+     * The storage engine of the table on MySQL, such as {@code InnoDB}; ignored by other databases.
+     */
+    String engine() default "";
 }
@@ -5,19 +5,35 @@ import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Configuration class for the ORM framework.
+ * Connection pools for URLs passed to {@link #database}, {@link #readReplica} and {@link #shard}
+ * are created on first use, so {@code orm.pool.*} properties set after them still apply.
+ * A SQLite database file gets a single writer connection and a pool of read-only
+ * connections, which are used as its read replica.
  */
 public class Configuration {
     
-    private DataSource dataSource;
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([^}]+)}");
+    
+    private PooledDataSource dataSource;
+    private PooledDataSource sqliteReaders;
+    private boolean sqliteWriter;
+    private List<PooledDataSource> readReplicas = new ArrayList<>();
+    private List<PooledDataSource> shards = new ArrayList<>();
     private Dialect dialect;
     private List<Class<?>> entityClasses = new ArrayList<>();
     private Properties properties = new Properties();
+    private PoolMetrics poolMetrics;
     
     public Configuration() {
         // Set default properties
@@ -26,27 +42,101 @@ public class Configuration {
         properties.setProperty("orm.hbm2ddl.auto", "none");
     }
     
+    /**
+     * Creates a configuration from a properties file on the classpath, such as {@code orm-prod.properties}.
+     * {@code ${NAME}} placeholders are replaced by the system property or environment variable of that name.
+     */
+    public static Configuration fromResource(String resourceName) {
+        Properties loaded = new Properties();
+        try (InputStream in = Configuration.class.getClassLoader().getResourceAsStream(resourceName)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Configuration resource not found: " + resourceName);
+            }
+            loaded.load(in);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load configuration resource: " + resourceName, e);
+        }
+        return new Configuration().properties(loaded);
+    }
+    
+    /**
+     * Copies the given properties into this configuration, resolving {@code ${NAME}} placeholders.
+     * If {@code orm.database.url} is set, the database is configured from it and
+     * {@code orm.database.username} and {@code orm.database.password}.
+     */
+    public Configuration properties(Properties source) {
+        for (String key : source.stringPropertyNames()) {
+            properties.setProperty(key, resolvePlaceholders(source.getProperty(key)));
+        }
+        
+        String url = properties.getProperty("orm.database.url");
+        if (url != null && !url.isEmpty()) {
+            database(url, properties.getProperty("orm.database.username", ""),
+                properties.getProperty("orm.database.password", ""));
+        }
+        return this;
+    }
+    
     /**
      * Configures the database connection.
      */
     public Configuration database(String url, String username, String password) {
-        HikariConfig config = new HikariConfig();
-        config.setJdbcUrl(url);
-        config.setUsername(username);
-        config.setPassword(password);
-        
-        // Set connection pool properties
-        config.setMaximumPoolSize(10);
-        config.setMinimumIdle(5);
-        config.setConnectionTimeout(30000);
-        config.setIdleTimeout(600000);
-        config.setMaxLifetime(1800000);
-        
-        this.dataSource = new HikariDataSource(config);
+        this.dataSource = new PooledDataSource(createPoolConfig(url, username, password), true);
+        this.sqliteReaders = null;
         
         // Auto-detect dialect based on URL
         autoDetectDialect(url);
+        this.sqliteWriter = dialect instanceof SQLiteDialect;
         
+        // Every connection to an in-memory database has a database of its own, so it has no readers
+        if (dialect instanceof SQLiteDialect && !SQLiteDialect.isInMemory(url)) {
+            HikariConfig config = createPoolConfig(url, username, password);
+            config.setReadOnly(true);
+            config.setPoolName("sqlite-reader");
+            this.sqliteReaders = new PooledDataSource(config, false);
+        }
+        
+        return this;
+    }
+    
+    /**
+     * Adds a read replica. Can be called multiple times; sessions send reads outside
+     * transactions to the replicas until they write.
+     */
+    public Configuration readReplica(String url, String username, String password) {
+        HikariConfig config = createPoolConfig(url, username, password);
+        config.setReadOnly(true);
+        config.setPoolName("replica-" + (readReplicas.size() + 1));
+        readReplicas.add(new PooledDataSource(config, false));
+        return this;
+    }
+    
+    /**
+     * Adds a custom data source as read replica.
+     */
+    public Configuration readReplica(DataSource dataSource) {
+        readReplicas.add(new PooledDataSource(dataSource));
+        return this;
+    }
+    
+    /**
+     * Adds a shard. Entities with a {@code @ShardKey} are spread over the shards in the
+     * order they were added; all other entities stay in the main database.
+     */
+    public Configuration shard(String url, String username, String password) {
+        HikariConfig config = createPoolConfig(url, username, password);
+        config.setPoolName("shard-" + (shards.size() + 1));
+        shards.add(new PooledDataSource(config, false));
+        return this;
+    }
+    
+    /**
+     * Adds custom data sources as shards.
+     */
+    public Configuration shards(DataSource... dataSources) {
+        for (DataSource shard : dataSources) {
+            shards.add(new PooledDataSource(shard));
+        }
         return this;
     }
     
@@ -54,7 +144,9 @@ public class Configuration {
      * Sets a custom data source.
      */
     public Configuration dataSource(DataSource dataSource) {
-        this.dataSource = dataSource;
+        this.dataSource = new PooledDataSource(dataSource);
+        this.sqliteReaders = null;
+        this.sqliteWriter = false;
         return this;
     }
     
@@ -91,6 +183,73 @@ public class Configuration {
         return properties.getProperty(key);
     }
     
+    private HikariConfig createPoolConfig(String url, String username, String password) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+        return config;
+    }
+    
+    /**
+     * Applies the pool properties right before the pool is started.
+     */
+    private void applyPoolSettings(HikariConfig config, boolean primary) {
+        String driver = properties.getProperty("orm.database.driver");
+        if (primary && driver != null && !driver.isEmpty()) {
+            config.setDriverClassName(driver);
+        }
+        
+        config.setMaximumPoolSize(getPoolMaximumSize());
+        config.setMinimumIdle(Math.min(getPoolMinimumIdle(), getPoolMaximumSize()));
+        config.setConnectionTimeout(getPoolConnectionTimeout());
+        config.setIdleTimeout(getPoolIdleTimeout());
+        config.setMaxLifetime(getPoolMaxLifetime());
+        config.setValidationTimeout(getPoolValidationTimeout());
+        config.setKeepaliveTime(getPoolKeepaliveTime());
+        config.setLeakDetectionThreshold(getPoolLeakDetectionThreshold());
+        
+        if (dialect != null) {
+            getDataSourceProperties().forEach(config::addDataSourceProperty);
+        }
+        if (dialect instanceof SQLiteDialect && config.getJdbcUrl().startsWith("jdbc:sqlite:")) {
+            applySQLiteSettings(config, primary);
+        }
+        
+        // The adaptive sizer needs acquisition timings, which Hikari only reports to a tracker set before start
+        if (primary && isPoolAdaptiveEnabled() && !isSQLiteSingleWriter()) {
+            poolMetrics = new PoolMetrics();
+            config.setMetricsTrackerFactory((poolName, poolStats) -> poolMetrics);
+        }
+    }
+    
+    private void applySQLiteSettings(HikariConfig config, boolean primary) {
+        if (config.isReadOnly()) {
+            // The writer has already switched the file to WAL, which a read-only connection could not do
+            config.getDataSourceProperties().remove("journal_mode");
+            // The driver only makes a connection read-only when opening it; Hikari's setReadOnly(true) then matches
+            config.addDataSourceProperty("open_mode", "1");
+            config.setMaximumPoolSize(getSQLiteReadPoolSize());
+            config.setMinimumIdle(Math.min(getPoolMinimumIdle(), getSQLiteReadPoolSize()));
+        } else if (primary && isSQLiteSingleWriter()) {
+            // SQLite allows one writer at a time, more connections would only wait on its lock
+            config.setMaximumPoolSize(1);
+            config.setMinimumIdle(1);
+        }
+    }
+    
+    private static String resolvePlaceholders(String value) {
+        Matcher matcher = PLACEHOLDER.matcher(value);
+        StringBuffer result = new StringBuffer();
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            String resolved = System.getProperty(name, System.getenv(name));
+            matcher.appendReplacement(result, Matcher.quoteReplacement(resolved != null ? resolved : matcher.group()));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+    
     private void autoDetectDialect(String url) {
         if (url.startsWith("jdbc:mysql:")) {
             this.dialect = new MySQLDialect();
@@ -110,7 +269,57 @@ public class Configuration {
         if (dataSource == null) {
             throw new IllegalStateException("DataSource not configured");
         }
-        return dataSource;
+        return dataSource.get();
+    }
+    
+    public List<DataSource> getReadReplicas() {
+        List<DataSource> replicas = resolve(readReplicas);
+        if (replicas.isEmpty() && sqliteReaders != null && isSQLiteSingleWriter()) {
+            // Opening the writer first creates the file and switches it to WAL
+            getDataSource();
+            replicas.add(sqliteReaders.get());
+        }
+        return replicas;
+    }
+    
+    public List<DataSource> getShards() {
+        return resolve(shards);
+    }
+    
+    private static List<DataSource> resolve(List<PooledDataSource> sources) {
+        List<DataSource> result = new ArrayList<>();
+        for (PooledDataSource source : sources) {
+            result.add(source.get());
+        }
+        return result;
+    }
+    
+    /**
+     * Gets the driver properties passed to the pools: the dialect's defaults, overridden by
+     * {@code orm.jdbc.<name>} properties. An empty value removes a default.
+     */
+    public Map<String, String> getDataSourceProperties() {
+        Map<String, String> result = getDialect().getDefaultDataSourceProperties();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith("orm.jdbc.")) {
+                String name = key.substring("orm.jdbc.".length());
+                String value = properties.getProperty(key).trim();
+                if (value.isEmpty()) {
+                    result.remove(name);
+                } else {
+                    result.put(name, value);
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Gets the acquisition metrics of the main connection pool, or null unless
+     * {@code orm.pool.adaptive.enabled} was set when the pool was created.
+     */
+    public PoolMetrics getPoolMetrics() {
+        return poolMetrics;
     }
     
     public Dialect getDialect() {
@@ -139,4 +348,163 @@ public class Configuration {
     public String getHbm2ddlAuto() {
         return properties.getProperty("orm.hbm2ddl.auto", "none");
     }
+    
+    public String getCurrentSessionContext() {
+        return properties.getProperty("orm.current_session_context", "thread");
+    }
+    
+    public String getConnectionReleaseMode() {
+        return properties.getProperty("orm.connection.release_mode", "after_statement");
+    }
+    
+    public String getReplicaLoadBalancing() {
+        return properties.getProperty("orm.replica.load_balancing", "round_robin");
+    }
+    
+    public int getBatchSize() {
+        return Integer.parseInt(properties.getProperty("orm.batch.size", "50"));
+    }
+    
+    public int getWritePipelineMaxBatch() {
+        return Integer.parseInt(properties.getProperty("orm.write_pipeline.max_batch", String.valueOf(getBatchSize())));
+    }
+    
+    public long getWritePipelineFlushInterval() {
+        // The single SQLite writer is busy while a group commits, which is enough for the next group to gather
+        String defaultInterval = isSQLiteSingleWriter() ? "0" : "5";
+        return Long.parseLong(properties.getProperty("orm.write_pipeline.flush_interval", defaultInterval));
+    }
+    
+    public int getWritePipelineQueueCapacity() {
+        return Integer.parseInt(properties.getProperty("orm.write_pipeline.queue_capacity", "10000"));
+    }
+    
+    /**
+     * Checks whether all writes to the SQLite database go through one connection, which is the
+     * default for SQLite pools created by {@link #database} unless {@code orm.sqlite.single_writer}
+     * is false. A custom data source keeps its own connection handling.
+     */
+    public boolean isSQLiteSingleWriter() {
+        return sqliteWriter && dialect instanceof SQLiteDialect
+            && Boolean.parseBoolean(properties.getProperty("orm.sqlite.single_writer", "true"));
+    }
+    
+    public int getSQLiteReadPoolSize() {
+        return Integer.parseInt(properties.getProperty("orm.sqlite.read_pool_size", String.valueOf(getPoolMaximumSize())));
+    }
+    
+    public int getBulkheadMaxConcurrent() {
+        return Integer.parseInt(properties.getProperty("orm.bulkhead.max_concurrent", "0"));
+    }
+    
+    public int getBulkheadMaxQueue() {
+        return Integer.parseInt(properties.getProperty("orm.bulkhead.max_queue", "100"));
+    }
+    
+    public long getBulkheadMaxWait() {
+        return Long.parseLong(properties.getProperty("orm.bulkhead.max_wait", "1000"));
+    }
+    
+    public boolean isWarmUpEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("orm.warmup.enabled", "false"));
+    }
+    
+    public boolean isWarmUpValidate() {
+        return Boolean.parseBoolean(properties.getProperty("orm.warmup.validate", "true"));
+    }
+    
+    public int getWarmUpMappingIterations() {
+        return Integer.parseInt(properties.getProperty("orm.warmup.mapping_iterations", "0"));
+    }
+    
+    public int getPoolMaximumSize() {
+        return Integer.parseInt(getPoolProperty("maximum_size", "orm.connection.pool.maximum", "10"));
+    }
+    
+    public int getPoolMinimumIdle() {
+        return Integer.parseInt(getPoolProperty("minimum_idle", "orm.connection.pool.minimum", "5"));
+    }
+    
+    public long getPoolConnectionTimeout() {
+        return Long.parseLong(getPoolProperty("connection_timeout", "orm.connection.pool.timeout", "30000"));
+    }
+    
+    public long getPoolIdleTimeout() {
+        return Long.parseLong(getPoolProperty("idle_timeout", "orm.connection.pool.idle.timeout", "600000"));
+    }
+    
+    public long getPoolMaxLifetime() {
+        return Long.parseLong(getPoolProperty("max_lifetime", "orm.connection.pool.max.lifetime", "1800000"));
+    }
+    
+    public long getPoolValidationTimeout() {
+        return Long.parseLong(getPoolProperty("validation_timeout", "orm.connection.pool.validation.timeout", "5000"));
+    }
+    
+    public long getPoolKeepaliveTime() {
+        return Long.parseLong(getPoolProperty("keepalive_time", null, "0"));
+    }
+    
+    public long getPoolLeakDetectionThreshold() {
+        return Long.parseLong(getPoolProperty("leak_detection_threshold", null, "0"));
+    }
+    
+    public boolean isPoolAdaptiveEnabled() {
+        return Boolean.parseBoolean(getPoolProperty("adaptive.enabled", null, "false"));
+    }
+    
+    public int getPoolAdaptiveMinSize() {
+        return Integer.parseInt(getPoolProperty("adaptive.min_size", null, String.valueOf(getPoolMinimumIdle())));
+    }
+    
+    public int getPoolAdaptiveMaxSize() {
+        return Integer.parseInt(getPoolProperty("adaptive.max_size", null, String.valueOf(getPoolMaximumSize())));
+    }
+    
+    public long getPoolAdaptiveInterval() {
+        return Long.parseLong(getPoolProperty("adaptive.interval", null, "5000"));
+    }
+    
+    public long getPoolAdaptiveTargetWait() {
+        return Long.parseLong(getPoolProperty("adaptive.target_wait", null, "10"));
+    }
+    
+    /**
+     * Reads {@code orm.pool.<key>}, falling back to the older {@code orm.connection.pool.*} key.
+     */
+    private String getPoolProperty(String key, String legacyKey, String defaultValue) {
+        String value = properties.getProperty("orm.pool." + key);
+        if ((value == null || value.isEmpty()) && legacyKey != null) {
+            value = properties.getProperty(legacyKey);
+        }
+        return value == null || value.isEmpty() ? defaultValue : value.trim();
+    }
+    
+    /**
+     * A data source given by the caller, or a connection pool that is started on first use.
+     */
+    private final class PooledDataSource {
+        private final HikariConfig config;
+        private final boolean primary;
+        private DataSource dataSource;
+        
+        PooledDataSource(HikariConfig config, boolean primary) {
+            this.config = config;
+            this.primary = primary;
+        }
+        
+        PooledDataSource(DataSource dataSource) {
+            this.config = null;
+            this.primary = false;
+            this.dataSource = dataSource;
+        }
+        
+        synchronized DataSource get() {
+            if (dataSource == null) {
+                applyPoolSettings(config, primary);
+                dataSource = new HikariDataSource(config);
+            }
+            return dataSource;
+        }
+    }
 }
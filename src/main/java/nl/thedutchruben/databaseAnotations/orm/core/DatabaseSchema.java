@@ -0,0 +1,143 @@
+package nl.thedutchruben.databaseAnotations.orm.core;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Snapshot of the tables, columns and indexes that exist in the database for a set of entities.
+ * Tables and columns are read with one metadata call per schema the entities live in; JDBC has
+ * no bulk call for indexes, so those are read per table, and only for tables that expect indexes.
+ * Names are compared case-insensitively because databases fold unquoted identifiers differently.
+ */
+final class DatabaseSchema {
+    
+    private final String defaultCatalog;
+    private final String defaultSchema;
+    private final Map<String, Set<String>> columnsByTable = new HashMap<>();
+    private final Map<String, Set<String>> indexesByTable = new HashMap<>();
+    
+    private DatabaseSchema(String defaultCatalog, String defaultSchema) {
+        this.defaultCatalog = defaultCatalog;
+        this.defaultSchema = defaultSchema;
+    }
+    
+    /**
+     * Reads the tables and columns of the given entities, and the indexes of {@code indexed}.
+     */
+    static DatabaseSchema read(Connection connection, Collection<EntityMetadata> entities,
+                               Collection<EntityMetadata> indexed) throws SQLException {
+        DatabaseSchema snapshot = new DatabaseSchema(connection.getCatalog(), connection.getSchema());
+        DatabaseMetaData metaData = connection.getMetaData();
+        
+        Set<String> schemas = new LinkedHashSet<>();
+        for (EntityMetadata metadata : entities) {
+            if (schemas.add(snapshot.location(metadata))) {
+                snapshot.readColumns(metaData, metadata);
+            }
+        }
+        
+        for (EntityMetadata metadata : indexed) {
+            if (snapshot.hasTable(metadata)) {
+                snapshot.readIndexes(metaData, metadata);
+            }
+        }
+        return snapshot;
+    }
+    
+    private void readColumns(DatabaseMetaData metaData, EntityMetadata metadata) throws SQLException {
+        String catalog = catalogOf(metadata);
+        // A declared schema has to match the stored case, the connection's own schema already does
+        for (String schema : variants(schemaOf(metadata), metadata.getSchema() != null)) {
+            boolean found = false;
+            try (ResultSet rs = metaData.getColumns(catalog, schema, null, null)) {
+                while (rs.next()) {
+                    found = true;
+                    columnsByTable.computeIfAbsent(key(catalog, schemaOf(metadata), rs.getString("TABLE_NAME")),
+                            k -> new HashSet<>())
+                        .add(rs.getString("COLUMN_NAME").toUpperCase(Locale.ROOT));
+                }
+            }
+            if (found) {
+                return;
+            }
+        }
+    }
+    
+    private void readIndexes(DatabaseMetaData metaData, EntityMetadata metadata) throws SQLException {
+        String catalog = catalogOf(metadata);
+        Set<String> indexes = new HashSet<>();
+        for (String schema : variants(schemaOf(metadata), metadata.getSchema() != null)) {
+            for (String table : variants(metadata.getTableName(), true)) {
+                try (ResultSet rs = metaData.getIndexInfo(catalog, schema, table, false, true)) {
+                    while (rs.next()) {
+                        String indexName = rs.getString("INDEX_NAME");
+                        if (indexName != null) {
+                            indexes.add(indexName.toUpperCase(Locale.ROOT));
+                        }
+                    }
+                }
+                if (!indexes.isEmpty()) {
+                    indexesByTable.put(tableKey(metadata), indexes);
+                    return;
+                }
+            }
+        }
+        indexesByTable.put(tableKey(metadata), indexes);
+    }
+    
+    boolean hasTable(EntityMetadata metadata) {
+        return columnsByTable.containsKey(tableKey(metadata));
+    }
+    
+    boolean hasColumn(EntityMetadata metadata, String column) {
+        Set<String> columns = columnsByTable.get(tableKey(metadata));
+        return columns != null && columns.contains(column.toUpperCase(Locale.ROOT));
+    }
+    
+    boolean hasIndex(EntityMetadata metadata, String index) {
+        Set<String> indexes = indexesByTable.get(tableKey(metadata));
+        return indexes != null && indexes.contains(index.toUpperCase(Locale.ROOT));
+    }
+    
+    private String catalogOf(EntityMetadata metadata) {
+        return metadata.getCatalog() != null ? metadata.getCatalog() : defaultCatalog;
+    }
+    
+    private String schemaOf(EntityMetadata metadata) {
+        return metadata.getSchema() != null ? metadata.getSchema() : defaultSchema;
+    }
+    
+    private String location(EntityMetadata metadata) {
+        return key(catalogOf(metadata), schemaOf(metadata), "");
+    }
+    
+    private String tableKey(EntityMetadata metadata) {
+        return key(catalogOf(metadata), schemaOf(metadata), metadata.getTableName());
+    }
+    
+    private static String key(String catalog, String schema, String table) {
+        return (catalog + "." + schema + "." + table).toUpperCase(Locale.ROOT);
+    }
+    
+    /**
+     * Gets the name as written and, when it may be folded, in upper and lower case.
+     */
+    private static Set<String> variants(String name, boolean fold) {
+        Set<String> variants = new LinkedHashSet<>();
+        variants.add(name);
+        if (fold && name != null) {
+            variants.add(name.toUpperCase(Locale.ROOT));
+            variants.add(name.toLowerCase(Locale.ROOT));
+        }
+        return variants;
+    }
+}
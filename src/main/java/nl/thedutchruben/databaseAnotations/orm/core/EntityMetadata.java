@@ -15,6 +15,11 @@ public class EntityMetadata {
     private Map<String, ColumnMetadata> columns;
     private ColumnMetadata primaryKey;
     private Map<String, RelationshipMetadata> relationships;
+    private Field shardKeyField;
+    private List<IndexMetadata> indexes = new ArrayList<>();
+    private PartitionMetadata partitioning;
+    private Set<StorageOption> storageOptions = EnumSet.noneOf(StorageOption.class);
+    private String engine;
     
     public EntityMetadata(Class<?> entityClass) {
         this.entityClass = entityClass;
@@ -32,6 +37,10 @@ public class EntityMetadata {
         for (Field field : fields) {
             field.setAccessible(true);
             
+            if (field.isAnnotationPresent(ShardKey.class)) {
+                parseShardKey(field);
+            }
+            
             if (field.isAnnotationPresent(Id.class)) {
                 parsePrimaryKey(field);
             } else if (field.isAnnotationPresent(Column.class) || isBasicType(field.getType())) {
@@ -40,6 +49,10 @@ public class EntityMetadata {
                 parseRelationship(field);
             }
         }
+        
+        // Index columns may name fields, so they are resolved once all fields are known
+        parseIndexes();
+        parsePartitioning();
     }
     
     private void parseTableInfo() {
@@ -48,6 +61,8 @@ public class EntityMetadata {
             this.tableName = table.name();
             this.schema = table.schema().isEmpty() ? null : table.schema();
             this.catalog = table.catalog().isEmpty() ? null : table.catalog();
+            this.storageOptions.addAll(Arrays.asList(table.storage()));
+            this.engine = table.engine().isEmpty() ? null : table.engine();
         } else if (entityClass.isAnnotationPresent(Entity.class)) {
             Entity entity = entityClass.getAnnotation(Entity.class);
             this.tableName = entity.name().isEmpty() ? entityClass.getSimpleName() : entity.name();
@@ -70,6 +85,109 @@ public class EntityMetadata {
         this.columns.put(field.getName(), columnMeta);
     }
     
+    private void parseShardKey(Field field) {
+        if (shardKeyField != null) {
+            throw new IllegalArgumentException("Entity " + entityClass.getSimpleName()
+                + " declares more than one @ShardKey");
+        }
+        this.shardKeyField = field;
+    }
+    
+    private void parseIndexes() {
+        Table table = entityClass.getAnnotation(Table.class);
+        if (table == null) {
+            return;
+        }
+        
+        for (Index index : table.indexes()) {
+            List<String> columnList = new ArrayList<>();
+            List<String> columnNames = new ArrayList<>();
+            for (String entry : index.columnList().split(",")) {
+                String[] parts = entry.trim().split("\\s+", 2);
+                if (parts[0].isEmpty()) {
+                    continue;
+                }
+                String column = resolveColumnName(parts[0]);
+                columnNames.add(column);
+                columnList.add(parts.length > 1 ? column + " " + parts[1].toUpperCase(Locale.ROOT) : column);
+            }
+            if (columnList.isEmpty()) {
+                throw new IllegalArgumentException("Index on " + entityClass.getSimpleName() + " has no columns");
+            }
+            
+            List<String> include = new ArrayList<>();
+            for (String column : index.include()) {
+                include.add(resolveColumnName(column.trim()));
+            }
+            
+            String name = index.name().isEmpty()
+                ? (index.unique() ? "uk_" : "idx_") + tableName + "_" + String.join("_", columnNames)
+                : index.name();
+            indexes.add(new IndexMetadata(name, columnList, index.unique(), index.where(), include));
+        }
+    }
+    
+    private void parsePartitioning() {
+        Partitioned partitioned = entityClass.getAnnotation(Partitioned.class);
+        if (partitioned == null) {
+            return;
+        }
+        
+        ColumnMetadata column = columns.get(partitioned.column());
+        if (column == null) {
+            column = columns.values().stream()
+                .filter(candidate -> candidate.getColumnName().equalsIgnoreCase(partitioned.column()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Partition column " + partitioned.column()
+                    + " is not a mapped column of " + entityClass.getSimpleName()));
+        }
+        
+        switch (partitioned.strategy()) {
+            case RANGE:
+                Class<?> type = column.getJavaType();
+                boolean temporal = (java.util.Date.class.isAssignableFrom(type) && type != java.sql.Time.class)
+                    || type == java.time.LocalDate.class || type == java.time.LocalDateTime.class
+                    || type == java.time.Instant.class || type == java.time.OffsetDateTime.class;
+                if (!temporal) {
+                    throw new IllegalArgumentException("Range partition column " + column.getColumnName()
+                        + " of " + entityClass.getSimpleName() + " must be a date or timestamp");
+                }
+                break;
+            case LIST:
+                if (partitioned.values().length == 0) {
+                    throw new IllegalArgumentException("List partitioning of " + entityClass.getSimpleName() + " has no values");
+                }
+                break;
+            case HASH:
+                if (partitioned.partitions() <= 0) {
+                    throw new IllegalArgumentException("Hash partitioning of " + entityClass.getSimpleName()
+                        + " needs a positive number of partitions");
+                }
+                break;
+            default:
+                break;
+        }
+        
+        this.partitioning = new PartitionMetadata(column, partitioned.strategy(), partitioned.interval(),
+            Math.max(0, partitioned.premake()), partitioned.retention(),
+            Arrays.asList(partitioned.values()), partitioned.partitions());
+    }
+    
+    /**
+     * Maps a field name to its column name; anything else is taken as a column name.
+     */
+    private String resolveColumnName(String name) {
+        ColumnMetadata column = columns.get(name);
+        if (column != null) {
+            return column.getColumnName();
+        }
+        RelationshipMetadata relationship = relationships.get(name);
+        if (relationship != null && relationship.getJoinColumn() != null && !relationship.getJoinColumn().isEmpty()) {
+            return relationship.getJoinColumn();
+        }
+        return name;
+    }
+    
     private void parseColumn(Field field) {
         ColumnMetadata columnMeta = new ColumnMetadata(field);
         this.columns.put(field.getName(), columnMeta);
@@ -81,7 +199,7 @@ public class EntityMetadata {
     }
     
     private boolean isBasicType(Class<?> type) {
-        return type.isPrimitive() || 
+        return type.isPrimitive() ||
                type == String.class ||
                type == Integer.class ||
                type == Long.class ||
@@ -109,6 +227,17 @@ public class EntityMetadata {
     public Map<String, ColumnMetadata> getColumns() { return columns; }
     public ColumnMetadata getPrimaryKey() { return primaryKey; }
     public Map<String, RelationshipMetadata> getRelationships() { return relationships; }
+    public Field getShardKeyField() { return shardKeyField; }
+    public List<IndexMetadata> getIndexes() { return indexes; }
+    /** The table partitioning, or null when the table is not partitioned. */
+    public PartitionMetadata getPartitioning() { return partitioning; }
+    public Set<StorageOption> getStorageOptions() { return storageOptions; }
+    /** The MySQL storage engine, or null for the server default. */
+    public String getEngine() { return engine; }
+    
+    public boolean isSharded() {
+        return shardKeyField != null;
+    }
     
     public String getFullTableName() {
         StringBuilder sb = new StringBuilder();
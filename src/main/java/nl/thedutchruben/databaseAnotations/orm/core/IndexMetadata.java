@@ -0,0 +1,35 @@
+package nl.thedutchruben.databaseAnotations.orm.core;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds metadata information about an index declared with {@code @Index}.
+ * Column entries are resolved column names, optionally followed by ASC or DESC.
+ */
+public class IndexMetadata {
+    private final String name;
+    private final List<String> columns;
+    private final boolean unique;
+    private final String where;
+    private final List<String> include;
+    
+    public IndexMetadata(String name, List<String> columns, boolean unique, String where, List<String> include) {
+        this.name = name;
+        this.columns = Collections.unmodifiableList(columns);
+        this.unique = unique;
+        this.where = where == null || where.isEmpty() ? null : where;
+        this.include = Collections.unmodifiableList(include);
+    }
+    
+    // Getters
+    public String getName() { return name; }
+    public List<String> getColumns() { return columns; }
+    public boolean isUnique() { return unique; }
+    public String getWhere() { return where; }
+    public List<String> getInclude() { return include; }
+    
+    public boolean isPartial() {
+        return where != null;
+    }
+}
@@ -0,0 +1,233 @@
+package nl.thedutchruben.databaseAnotations.orm.core;
+
+import nl.thedutchruben.databaseAnotations.orm.annotations.PartitionStrategy;
+import nl.thedutchruben.databaseAnotations.orm.dialect.Dialect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains the range partitions of entities annotated with {@code @Partitioned}.
+ * Call {@link #maintain()} periodically, for example daily, to keep the configured number
+ * of upcoming partitions ahead of the current date and remove partitions older than the retention.
+ * Entities partitioned by list or hash, and dialects without partitioning, are left alone.
+ * A manager can look after several databases holding the same tables, such as the main
+ * database and its shards; every operation then runs on each of them in turn.
+ */
+public class PartitionManager {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PartitionManager.class);
+    
+    private final List<DataSource> dataSources;
+    private final Dialect dialect;
+    private final Map<Class<?>, EntityMetadata> entityMetadataMap;
+    private final Clock clock;
+    
+    public PartitionManager(DataSource dataSource, Dialect dialect, Map<Class<?>, EntityMetadata> entityMetadataMap) {
+        this(dataSource, dialect, entityMetadataMap, Clock.systemDefaultZone());
+    }
+    
+    public PartitionManager(DataSource dataSource, Dialect dialect, Map<Class<?>, EntityMetadata> entityMetadataMap,
+                            Clock clock) {
+        this(List.of(dataSource), dialect, entityMetadataMap, clock);
+    }
+    
+    /**
+     * Creates a manager for several databases holding the same tables; the first one is used
+     * to read partition names with {@link #getPartitionNames(Class)}.
+     */
+    public PartitionManager(List<DataSource> dataSources, Dialect dialect, Map<Class<?>, EntityMetadata> entityMetadataMap,
+                            Clock clock) {
+        if (dataSources.isEmpty()) {
+            throw new IllegalArgumentException("At least one data source is required");
+        }
+        this.dataSources = List.copyOf(dataSources);
+        this.dialect = dialect;
+        this.entityMetadataMap = entityMetadataMap;
+        this.clock = clock;
+    }
+    
+    /**
+     * Creates the upcoming partitions and drops the expired ones. On PostgreSQL a range-partitioned
+     * table has no default partition, so run this often enough that the premade partitions never run out.
+     */
+    public void maintain() {
+        createUpcomingPartitions();
+        dropExpiredPartitions();
+    }
+    
+    /**
+     * Creates the partitions for the current interval and the configured number of upcoming
+     * intervals that come after the newest existing partition.
+     *
+     * @return the number of partitions created, summed over the databases
+     */
+    public int createUpcomingPartitions() {
+        int created = 0;
+        for (DataSource dataSource : dataSources) {
+            created += createUpcomingPartitions(dataSource);
+        }
+        return created;
+    }
+    
+    private int createUpcomingPartitions(DataSource dataSource) {
+        int created = 0;
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            for (EntityMetadata metadata : getRangePartitioned()) {
+                PartitionMetadata partitioning = metadata.getPartitioning();
+                LocalDate newest = null;
+                for (LocalDate start : getPartitionStarts(connection, metadata)) {
+                    if (newest == null || start.isAfter(newest)) {
+                        newest = start;
+                    }
+                }
+                
+                // Range partitions can only be appended after the newest one
+                List<LocalDate> missing = new ArrayList<>();
+                for (LocalDate start : partitioning.upcomingPeriods(LocalDate.now(clock))) {
+                    if (newest == null || start.isAfter(newest)) {
+                        missing.add(start);
+                    }
+                }
+                if (missing.isEmpty()) {
+                    continue;
+                }
+                
+                for (String sql : dialect.getAddRangePartitionStrings(metadata.getFullTableName(), partitioning, missing)) {
+                    logger.debug("SQL: {}", sql);
+                    statement.execute(sql);
+                }
+                logger.info("Created {} partitions of {} from {}", missing.size(), metadata.getTableName(), missing.get(0));
+                created += missing.size();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to create partitions", e);
+        }
+        return created;
+    }
+    
+    /**
+     * Drops the partitions, and their rows, that ended before the retention window.
+     *
+     * @return the names of the dropped partitions, once for every database they were dropped from
+     */
+    public List<String> dropExpiredPartitions() {
+        return removeExpiredPartitions(false);
+    }
+    
+    /**
+     * Detaches the partitions that ended before the retention window, keeping them as standalone
+     * tables for archiving.
+     *
+     * @return the names of the detached partitions, once for every database they were detached from
+     * @throws UnsupportedOperationException if the dialect cannot detach partitions
+     */
+    public List<String> detachExpiredPartitions() {
+        return removeExpiredPartitions(true);
+    }
+    
+    /**
+     * Gets the names of the partitions of an entity's table in the first database.
+     */
+    public List<String> getPartitionNames(Class<?> entityClass) {
+        EntityMetadata metadata = entityMetadataMap.get(entityClass);
+        if (metadata == null) {
+            throw new IllegalArgumentException("Entity not registered: " + entityClass.getName());
+        }
+        try (Connection connection = dataSources.get(0).getConnection()) {
+            return readPartitionNames(connection, metadata);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to read partitions of " + metadata.getTableName(), e);
+        }
+    }
+    
+    private List<String> removeExpiredPartitions(boolean detach) {
+        List<String> removed = new ArrayList<>();
+        for (DataSource dataSource : dataSources) {
+            removeExpiredPartitions(dataSource, detach, removed);
+        }
+        return removed;
+    }
+    
+    private void removeExpiredPartitions(DataSource dataSource, boolean detach, List<String> removed) {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            for (EntityMetadata metadata : getRangePartitioned()) {
+                PartitionMetadata partitioning = metadata.getPartitioning();
+                LocalDate retentionStart = partitioning.retentionStart(LocalDate.now(clock));
+                if (retentionStart == null) {
+                    continue;
+                }
+                
+                for (LocalDate start : getPartitionStarts(connection, metadata)) {
+                    if (partitioning.nextPeriod(start).isAfter(retentionStart)) {
+                        continue;
+                    }
+                    String tableName = metadata.getFullTableName();
+                    String partitionName = dialect.getPartitionName(tableName, partitioning.partitionSuffix(start));
+                    String sql = detach
+                        ? dialect.getDetachPartitionString(tableName, partitionName)
+                        : dialect.getDropPartitionString(tableName, partitionName);
+                    logger.debug("SQL: {}", sql);
+                    statement.execute(sql);
+                    logger.info("{} partition {} of {}", detach ? "Detached" : "Dropped", partitionName, metadata.getTableName());
+                    removed.add(partitionName);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to remove expired partitions", e);
+        }
+    }
+    
+    private List<EntityMetadata> getRangePartitioned() {
+        List<EntityMetadata> partitioned = new ArrayList<>();
+        if (!dialect.supportsPartitioning()) {
+            return partitioned;
+        }
+        for (EntityMetadata metadata : entityMetadataMap.values()) {
+            if (metadata.getPartitioning() != null && metadata.getPartitioning().getStrategy() == PartitionStrategy.RANGE) {
+                partitioned.add(metadata);
+            }
+        }
+        return partitioned;
+    }
+    
+    /**
+     * Gets the interval starts of the existing range partitions, skipping default and catch-all partitions.
+     */
+    private List<LocalDate> getPartitionStarts(Connection connection, EntityMetadata metadata) throws SQLException {
+        List<LocalDate> starts = new ArrayList<>();
+        for (String name : readPartitionNames(connection, metadata)) {
+            LocalDate start = metadata.getPartitioning().parsePartitionName(name);
+            if (start != null) {
+                starts.add(start);
+            }
+        }
+        return starts;
+    }
+    
+    private List<String> readPartitionNames(Connection connection, EntityMetadata metadata) throws SQLException {
+        List<String> names = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(dialect.getPartitionNamesQuery())) {
+            stmt.setString(1, metadata.getFullTableName());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    names.add(rs.getString(1));
+                }
+            }
+        }
+        return names;
+    }
+}
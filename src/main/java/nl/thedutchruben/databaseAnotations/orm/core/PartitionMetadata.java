@@ -0,0 +1,144 @@
+package nl.thedutchruben.databaseAnotations.orm.core;
+
+import nl.thedutchruben.databaseAnotations.orm.annotations.PartitionInterval;
+import nl.thedutchruben.databaseAnotations.orm.annotations.PartitionStrategy;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Holds metadata information about a table partitioned with {@code @Partitioned}.
+ * Range partitions are named after the start of their interval, such as {@code p2024_05}
+ * for a month, so the partition manager can tell from the name which interval a partition covers.
+ */
+public class PartitionMetadata {
+    
+    private static final Pattern RANGE_SUFFIX = Pattern.compile("p(\\d{4})(?:_(\\d{2}))?(?:_(\\d{2}))?$");
+    
+    private final ColumnMetadata column;
+    private final PartitionStrategy strategy;
+    private final PartitionInterval interval;
+    private final int premake;
+    private final int retention;
+    private final List<String> values;
+    private final int partitions;
+    
+    public PartitionMetadata(ColumnMetadata column, PartitionStrategy strategy, PartitionInterval interval,
+                             int premake, int retention, List<String> values, int partitions) {
+        this.column = column;
+        this.strategy = strategy;
+        this.interval = interval;
+        this.premake = premake;
+        this.retention = retention;
+        this.values = Collections.unmodifiableList(values);
+        this.partitions = partitions;
+    }
+    
+    /**
+     * Gets the start of the interval containing the date.
+     */
+    public LocalDate periodStart(LocalDate date) {
+        switch (interval) {
+            case DAY:
+                return date;
+            case WEEK:
+                return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH:
+                return date.withDayOfMonth(1);
+            case YEAR:
+                return date.withDayOfYear(1);
+            default:
+                throw new IllegalStateException("Unknown partition interval: " + interval);
+        }
+    }
+    
+    /**
+     * Gets the start of the interval after the one starting at {@code start}.
+     */
+    public LocalDate nextPeriod(LocalDate start) {
+        switch (interval) {
+            case DAY:
+                return start.plusDays(1);
+            case WEEK:
+                return start.plusWeeks(1);
+            case MONTH:
+                return start.plusMonths(1);
+            case YEAR:
+                return start.plusYears(1);
+            default:
+                throw new IllegalStateException("Unknown partition interval: " + interval);
+        }
+    }
+    
+    /**
+     * Gets the starts of the current interval and the {@code premake} intervals after it.
+     */
+    public List<LocalDate> upcomingPeriods(LocalDate today) {
+        List<LocalDate> periods = new ArrayList<>();
+        LocalDate start = periodStart(today);
+        for (int i = 0; i <= premake; i++) {
+            periods.add(start);
+            start = nextPeriod(start);
+        }
+        return periods;
+    }
+    
+    /**
+     * Gets the start of the oldest interval to keep, or null when all partitions are kept.
+     */
+    public LocalDate retentionStart(LocalDate today) {
+        if (retention <= 0) {
+            return null;
+        }
+        LocalDate start = periodStart(today);
+        for (int i = 0; i < retention; i++) {
+            // Step back by going to the day before the interval start
+            start = periodStart(start.minusDays(1));
+        }
+        return start;
+    }
+    
+    /**
+     * Gets the partition name suffix for the interval starting at {@code start}.
+     */
+    public String partitionSuffix(LocalDate start) {
+        switch (interval) {
+            case YEAR:
+                return String.format("p%04d", start.getYear());
+            case MONTH:
+                return String.format("p%04d_%02d", start.getYear(), start.getMonthValue());
+            default:
+                return String.format("p%04d_%02d_%02d", start.getYear(), start.getMonthValue(), start.getDayOfMonth());
+        }
+    }
+    
+    /**
+     * Gets the interval start encoded in a range partition name, or null for other partitions.
+     */
+    public LocalDate parsePartitionName(String partitionName) {
+        Matcher matcher = RANGE_SUFFIX.matcher(partitionName.toLowerCase());
+        if (!matcher.find()) {
+            return null;
+        }
+        int year = Integer.parseInt(matcher.group(1));
+        int month = matcher.group(2) != null ? Integer.parseInt(matcher.group(2)) : 1;
+        int day = matcher.group(3) != null ? Integer.parseInt(matcher.group(3)) : 1;
+        return LocalDate.of(year, month, day);
+    }
+    
+    // Getters
+    public ColumnMetadata getColumn() { return column; }
+    public String getColumnName() { return column.getColumnName(); }
+    public PartitionStrategy getStrategy() { return strategy; }
+    public PartitionInterval getInterval() { return interval; }
+    public int getPremake() { return premake; }
+    public int getRetention() { return retention; }
+    public List<String> getValues() { return values; }
+    public int getPartitions() { return partitions; }
+}
@@ -0,0 +1,87 @@
+package nl.thedutchruben.databaseAnotations.orm.core;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connection acquisition metrics reported by HikariCP.
+ * Keeps running totals plus counters since the last {@link #takeSample()}, which the
+ * adaptive pool sizer reads once per interval.
+ */
+public class PoolMetrics implements IMetricsTracker {
+    
+    // Running totals
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final AtomicInteger inUse = new AtomicInteger();
+    
+    // Since the last sample
+    private final LongAdder intervalAcquisitions = new LongAdder();
+    private final LongAdder intervalAcquireNanos = new LongAdder();
+    private final LongAdder intervalTimeouts = new LongAdder();
+    private final AtomicLong intervalMaxAcquireNanos = new AtomicLong();
+    private final AtomicInteger intervalPeakInUse = new AtomicInteger();
+    
+    @Override
+    public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        acquisitions.increment();
+        acquireNanos.add(elapsedAcquiredNanos);
+        intervalAcquisitions.increment();
+        intervalAcquireNanos.add(elapsedAcquiredNanos);
+        intervalMaxAcquireNanos.accumulateAndGet(elapsedAcquiredNanos, Math::max);
+        intervalPeakInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+    }
+    
+    @Override
+    public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+        inUse.updateAndGet(current -> Math.max(0, current - 1));
+    }
+    
+    @Override
+    public void recordConnectionTimeout() {
+        timeouts.increment();
+        intervalTimeouts.increment();
+    }
+    
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+    
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+    
+    public double getAverageAcquireTimeMs() {
+        long count = acquisitions.sum();
+        return count > 0 ? acquireNanos.sum() / 1_000_000.0 / count : 0;
+    }
+    
+    /**
+     * Returns the counters since the previous sample and starts a new interval.
+     */
+    public Sample takeSample() {
+        Sample sample = new Sample();
+        sample.acquisitions = intervalAcquisitions.sumThenReset();
+        long nanos = intervalAcquireNanos.sumThenReset();
+        sample.averageAcquireTimeMs = sample.acquisitions > 0 ? nanos / 1_000_000.0 / sample.acquisitions : 0;
+        sample.maxAcquireTimeMs = intervalMaxAcquireNanos.getAndSet(0) / 1_000_000.0;
+        sample.timeouts = intervalTimeouts.sumThenReset();
+        sample.peakInUse = intervalPeakInUse.getAndSet(inUse.get());
+        return sample;
+    }
+    
+    /**
+     * Acquisition counters for one interval.
+     */
+    public static class Sample {
+        public long acquisitions;
+        public double averageAcquireTimeMs;
+        public double maxAcquireTimeMs;
+        public long timeouts;
+        public int peakInUse;
+    }
+}
@@ -19,6 +19,9 @@ public class RelationshipMetadata {
     private boolean optional = true;
     private String joinColumn = "";
     private String referencedColumn = "";
+    private String foreignKeyName = "";
+    private boolean foreignKeyConstrained = true;
+    private boolean joinColumnIndexed = true;
     
     public RelationshipMetadata(Field field) {
         this.field = field;
@@ -98,6 +101,9 @@ public class RelationshipMetadata {
             field.getName() + "_id" : annotation.name();
         this.referencedColumn = annotation.referencedColumnName().isEmpty() ? 
             "id" : annotation.referencedColumnName();
+        this.foreignKeyConstrained = !JoinColumn.NO_CONSTRAINT.equalsIgnoreCase(annotation.foreignKey());
+        this.foreignKeyName = foreignKeyConstrained ? annotation.foreignKey() : "";
+        this.joinColumnIndexed = annotation.index();
     }
     
     private Class<?> getGenericType() {
@@ -112,6 +118,15 @@ public class RelationshipMetadata {
         return Object.class;
     }
     
+    /**
+     * Checks if this side of the relationship holds the join column: a many-to-one, or a
+     * one-to-one that is not mapped by the other entity.
+     */
+    public boolean isOwningSide() {
+        return relationshipType == RelationshipType.MANY_TO_ONE
+            || (relationshipType == RelationshipType.ONE_TO_ONE && mappedBy.isEmpty());
+    }
+    
     public boolean isCollection() {
         return Collection.class.isAssignableFrom(field.getType());
     }
@@ -144,4 +159,8 @@ public class RelationshipMetadata {
     public boolean isOptional() { return optional; }
     public String getJoinColumn() { return joinColumn; }
     public String getReferencedColumn() { return referencedColumn; }
+    /** The declared constraint name, empty when the default name is used. */
+    public String getForeignKeyName() { return foreignKeyName; }
+    public boolean isForeignKeyConstrained() { return foreignKeyConstrained; }
+    public boolean isJoinColumnIndexed() { return joinColumnIndexed; }
 }
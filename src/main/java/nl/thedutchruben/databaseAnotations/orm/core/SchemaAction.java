@@ -0,0 +1,44 @@
+package nl.thedutchruben.databaseAnotations.orm.core;
+
+import java.util.Locale;
+
+/**
+ * Defines what a session factory does with the database schema on startup (orm.hbm2ddl.auto).
+ */
+public enum SchemaAction {
+    /**
+     * Leave the schema alone.
+     */
+    NONE,
+    
+    /**
+     * Drop and recreate all tables.
+     */
+    CREATE,
+    
+    /**
+     * Drop and recreate all tables, and drop them again when the factory is closed.
+     */
+    CREATE_DROP,
+    
+    /**
+     * Create missing tables, columns and indexes.
+     */
+    UPDATE,
+    
+    /**
+     * Fail if a table or column is missing.
+     */
+    VALIDATE;
+    
+    /**
+     * Parses a configuration value such as {@code create-drop}.
+     */
+    public static SchemaAction parse(String value) {
+        try {
+            return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown schema action: " + value, e);
+        }
+    }
+}
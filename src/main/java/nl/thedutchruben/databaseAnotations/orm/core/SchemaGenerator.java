@@ -1,16 +1,36 @@
 package nl.thedutchruben.databaseAnotations.orm.core;
 
+import nl.thedutchruben.databaseAnotations.orm.annotations.PartitionStrategy;
+import nl.thedutchruben.databaseAnotations.orm.annotations.StorageOption;
 import nl.thedutchruben.databaseAnotations.orm.dialect.Dialect;
+import nl.thedutchruben.databaseAnotations.orm.exception.MappingException;
+import nl.thedutchruben.databaseAnotations.orm.util.ExecutorUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Utility class for generating database schema from entity metadata.
@@ -19,9 +39,20 @@ public class SchemaGenerator {
     
     private static final Logger logger = LoggerFactory.getLogger(SchemaGenerator.class);
     
+    /**
+     * Connections used to create independent tables at the same time.
+     */
+    private static final int DEFAULT_PARALLELISM = 4;
+    
+    /**
+     * Table holding the fingerprint of the mappings the schema was last updated for.
+     */
+    public static final String FINGERPRINT_TABLE = "orm_schema_fingerprint";
+    
     private final DataSource dataSource;
     private final Dialect dialect;
     private final Map<Class<?>, EntityMetadata> entityMetadataMap;
+    private int parallelism = DEFAULT_PARALLELISM;
     
     public SchemaGenerator(DataSource dataSource, Dialect dialect, Map<Class<?>, EntityMetadata> entityMetadataMap) {
         this.dataSource = dataSource;
@@ -30,37 +61,163 @@ public class SchemaGenerator {
     }
     
     /**
-     * Creates all tables for registered entities.
+     * Creates all tables for registered entities, each with its indexes.
+     * Tables are created after the tables their foreign keys reference; tables that do not
+     * depend on each other are created concurrently on separate connections when the
+     * dialect allows it. Foreign keys inside a reference cycle are added once all tables exist.
      */
     public void createSchema() {
-        try (Connection connection = dataSource.getConnection();
-             Statement statement = connection.createStatement()) {
-            
-            for (EntityMetadata metadata : entityMetadataMap.values()) {
-                String createTableSql = generateCreateTableSql(metadata);
-                logger.info("Creating table: {}", metadata.getTableName());
-                logger.debug("SQL: {}", createTableSql);
-                statement.execute(createTableSql);
-            }
-            
+        try {
+            createTables(entityMetadataMap.values());
         } catch (SQLException e) {
             throw new RuntimeException("Failed to create schema", e);
         }
     }
     
+    private void createTables(Collection<EntityMetadata> tables) throws SQLException {
+        Map<RelationshipMetadata, EntityMetadata> deferredForeignKeys = new LinkedHashMap<>();
+        List<List<EntityMetadata>> levels = new ArrayList<>();
+        for (List<EntityMetadata> level : sortByDependencies(deferredForeignKeys)) {
+            level.retainAll(tables);
+            if (!level.isEmpty()) {
+                levels.add(level);
+            }
+        }
+        deferredForeignKeys.values().retainAll(tables);
+        
+        ExecutorService executor = parallelism > 1 && dialect.supportsParallelDdl()
+            ? ExecutorUtils.newFixedDaemonPool(parallelism, "orm-schema") : null;
+        
+        try {
+            for (List<EntityMetadata> level : levels) {
+                if (executor == null || level.size() == 1) {
+                    try (Connection connection = dataSource.getConnection();
+                         Statement statement = connection.createStatement()) {
+                        for (EntityMetadata metadata : level) {
+                            createTable(statement, metadata, deferredForeignKeys);
+                        }
+                    }
+                } else {
+                    createInParallel(executor, level, deferredForeignKeys);
+                }
+            }
+            
+            if (!deferredForeignKeys.isEmpty()) {
+                try (Connection connection = dataSource.getConnection();
+                     Statement statement = connection.createStatement()) {
+                    for (Map.Entry<RelationshipMetadata, EntityMetadata> entry : deferredForeignKeys.entrySet()) {
+                        String addForeignKeySql = "ALTER TABLE " + entry.getValue().getFullTableName()
+                            + " ADD " + generateForeignKeyConstraint(entry.getValue(), entry.getKey());
+                        logger.debug("SQL: {}", addForeignKeySql);
+                        statement.execute(addForeignKeySql);
+                    }
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+    
+    private void createTable(Statement statement, EntityMetadata metadata,
+                             Map<RelationshipMetadata, EntityMetadata> deferredForeignKeys) throws SQLException {
+        String createTableSql = generateCreateTableSql(metadata, deferredForeignKeys.keySet());
+        logger.info("Creating table: {}", metadata.getTableName());
+        logger.debug("SQL: {}", createTableSql);
+        statement.execute(createTableSql);
+        
+        for (StorageOption option : metadata.getStorageOptions()) {
+            if (!dialect.supportsStorageOption(option)) {
+                logger.debug("{} ignores storage option {} of {}", dialect.getClass().getSimpleName(),
+                    option, metadata.getTableName());
+            } else if (!dialect.supportsStorageOption(option, metadata)) {
+                logger.warn("{} cannot apply storage option {} to {}, created it without",
+                    dialect.getClass().getSimpleName(), option, metadata.getTableName());
+            }
+        }
+        if (metadata.getPartitioning() != null && !dialect.supportsPartitioning()) {
+            logger.warn("{} does not support partitioning, created {} unpartitioned",
+                dialect.getClass().getSimpleName(), metadata.getTableName());
+        }
+        for (String createPartitionSql : generateCreatePartitionSql(metadata)) {
+            logger.debug("SQL: {}", createPartitionSql);
+            statement.execute(createPartitionSql);
+        }
+        
+        for (String createIndexSql : generateCreateIndexSql(metadata)) {
+            logger.debug("SQL: {}", createIndexSql);
+            statement.execute(createIndexSql);
+        }
+    }
+    
+    private void createInParallel(ExecutorService executor, List<EntityMetadata> level,
+                                  Map<RelationshipMetadata, EntityMetadata> deferredForeignKeys) throws SQLException {
+        List<Future<Void>> futures = new ArrayList<>();
+        for (EntityMetadata metadata : level) {
+            futures.add(executor.submit(() -> {
+                try (Connection connection = dataSource.getConnection();
+                     Statement statement = connection.createStatement()) {
+                    createTable(statement, metadata, deferredForeignKeys);
+                }
+                return null;
+            }));
+        }
+        
+        // Wait for the whole level so no table of the next level starts before its references exist
+        Throwable failure = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while creating schema", e);
+            }
+        }
+        if (failure instanceof SQLException) {
+            throw (SQLException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new SQLException(failure);
+        }
+    }
+    
     /**
-     * Drops all tables for registered entities.
+     * Drops all tables for registered entities, referencing tables before the tables they reference.
      */
     public void dropSchema() {
+        Map<RelationshipMetadata, EntityMetadata> deferredForeignKeys = new LinkedHashMap<>();
+        List<List<EntityMetadata>> levels = sortByDependencies(deferredForeignKeys);
+        
         try (Connection connection = dataSource.getConnection();
              Statement statement = connection.createStatement()) {
             
-            for (EntityMetadata metadata : entityMetadataMap.values()) {
-                String dropTableSql = generateDropTableSql(metadata);
-                logger.info("Dropping table: {}", metadata.getTableName());
-                logger.debug("SQL: {}", dropTableSql);
-                statement.execute(dropTableSql);
+            // Constraints inside a reference cycle would keep each table of the cycle from being dropped
+            for (Map.Entry<RelationshipMetadata, EntityMetadata> entry : deferredForeignKeys.entrySet()) {
+                String dropForeignKeySql = dialect.getDropForeignKeyString(entry.getValue().getFullTableName(),
+                    getForeignKeyName(entry.getValue(), entry.getKey()));
+                try {
+                    statement.execute(dropForeignKeySql);
+                } catch (SQLException e) {
+                    logger.debug("Could not drop foreign key, the table may not exist: {}", e.getMessage());
+                }
+            }
+            
+            for (int i = levels.size() - 1; i >= 0; i--) {
+                for (EntityMetadata metadata : levels.get(i)) {
+                    String dropTableSql = generateDropTableSql(metadata);
+                    logger.info("Dropping table: {}", metadata.getTableName());
+                    logger.debug("SQL: {}", dropTableSql);
+                    statement.execute(dropTableSql);
+                }
             }
+            // The recorded fingerprint no longer describes the database
+            statement.execute(dialect.getDropTableString() + " " + FINGERPRINT_TABLE);
             
         } catch (SQLException e) {
             throw new RuntimeException("Failed to drop schema", e);
@@ -75,39 +232,342 @@ public class SchemaGenerator {
         createSchema();
     }
     
-    private String generateCreateTableSql(EntityMetadata metadata) {
+    /**
+     * Checks that every entity's table and columns exist, reading the database metadata in bulk.
+     * Missing indexes are logged. The check is skipped when the fingerprint recorded by the last
+     * {@link #updateSchema()} matches the current mappings.
+     *
+     * @throws MappingException if a table or column is missing
+     */
+    public void validateSchema() {
+        try (Connection connection = dataSource.getConnection()) {
+            String fingerprint = computeFingerprint();
+            if (fingerprint.equals(readFingerprint(connection))) {
+                logger.info("Schema fingerprint unchanged, skipping validation");
+                return;
+            }
+            
+            DatabaseSchema existing = DatabaseSchema.read(connection, entityMetadataMap.values(), entityMetadataMap.values());
+            List<String> problems = new ArrayList<>();
+            for (EntityMetadata metadata : sortedByTableName()) {
+                if (!existing.hasTable(metadata)) {
+                    problems.add("missing table " + metadata.getFullTableName());
+                    continue;
+                }
+                for (String column : getColumnDefinitions(metadata, true).keySet()) {
+                    if (!existing.hasColumn(metadata, column)) {
+                        problems.add("missing column " + metadata.getFullTableName() + "." + column);
+                    }
+                }
+                for (IndexMetadata index : collectIndexes(metadata)) {
+                    if (!existing.hasIndex(metadata, index.getName())) {
+                        logger.warn("Missing index {} on {}", index.getName(), metadata.getFullTableName());
+                    }
+                }
+            }
+            
+            if (!problems.isEmpty()) {
+                throw MappingException.schemaInvalid(problems);
+            }
+            logger.info("Schema validated for {} tables", entityMetadataMap.size());
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to validate schema", e);
+        }
+    }
+    
+    /**
+     * Creates the missing tables, columns and indexes without touching existing ones, reading the
+     * database metadata in bulk. Columns added to existing tables are nullable, since the rows
+     * already there have no value for them. Afterwards a fingerprint of the mappings is recorded,
+     * so a later update or validation of the same mappings skips reading the metadata.
+     */
+    public void updateSchema() {
+        try {
+            String fingerprint = computeFingerprint();
+            DatabaseSchema existing;
+            // Give the connection back before creating tables, a single-connection pool has no other
+            try (Connection connection = dataSource.getConnection()) {
+                if (fingerprint.equals(readFingerprint(connection))) {
+                    logger.info("Schema fingerprint unchanged, skipping update");
+                    return;
+                }
+                existing = DatabaseSchema.read(connection, entityMetadataMap.values(), entityMetadataMap.values());
+            }
+            
+            List<EntityMetadata> missingTables = new ArrayList<>();
+            for (EntityMetadata metadata : sortedByTableName()) {
+                if (!existing.hasTable(metadata)) {
+                    missingTables.add(metadata);
+                }
+            }
+            createTables(missingTables);
+            
+            try (Connection connection = dataSource.getConnection()) {
+                try (Statement statement = connection.createStatement()) {
+                    for (EntityMetadata metadata : sortedByTableName()) {
+                        if (!missingTables.contains(metadata)) {
+                            updateTable(statement, metadata, existing);
+                        }
+                    }
+                }
+                writeFingerprint(connection, fingerprint);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to update schema", e);
+        }
+    }
+    
+    private void updateTable(Statement statement, EntityMetadata metadata, DatabaseSchema existing) throws SQLException {
+        Map<String, String> columns = getColumnDefinitions(metadata, false);
+        Map<String, String> strictColumns = getColumnDefinitions(metadata, true);
+        for (Map.Entry<String, String> column : columns.entrySet()) {
+            if (existing.hasColumn(metadata, column.getKey())) {
+                continue;
+            }
+            if (!column.getValue().equals(strictColumns.get(column.getKey()))) {
+                logger.warn("Adding {}.{} as nullable, existing rows have no value for it",
+                    metadata.getTableName(), column.getKey());
+            }
+            String addColumnSql = "ALTER TABLE " + metadata.getFullTableName() + " "
+                + dialect.getAddColumnString() + " " + column.getValue();
+            logger.info("Adding column: {}.{}", metadata.getTableName(), column.getKey());
+            logger.debug("SQL: {}", addColumnSql);
+            statement.execute(addColumnSql);
+            
+            for (RelationshipMetadata relationship : getForeignKeys(metadata)) {
+                if (relationship.getJoinColumn().equalsIgnoreCase(column.getKey()) && dialect.supportsAddForeignKey()) {
+                    String addForeignKeySql = "ALTER TABLE " + metadata.getFullTableName()
+                        + " ADD " + generateForeignKeyConstraint(metadata, relationship);
+                    logger.debug("SQL: {}", addForeignKeySql);
+                    statement.execute(addForeignKeySql);
+                }
+            }
+        }
+        
+        for (IndexMetadata index : collectIndexes(metadata)) {
+            if (!existing.hasIndex(metadata, index.getName())) {
+                String createIndexSql = generateCreateIndexSql(metadata, index);
+                logger.info("Creating index: {}", index.getName());
+                logger.debug("SQL: {}", createIndexSql);
+                statement.execute(createIndexSql);
+            }
+        }
+    }
+    
+    /**
+     * Computes a hash of the DDL the current mappings generate for the dialect, which changes
+     * whenever a table, column, constraint or index mapping changes.
+     */
+    public String computeFingerprint() {
+        StringBuilder ddl = new StringBuilder(dialect.getClass().getName());
+        for (EntityMetadata metadata : sortedByTableName()) {
+            ddl.append('\n').append(generateCreateTableSql(metadata, Collections.emptySet()));
+            for (IndexMetadata index : collectIndexes(metadata)) {
+                ddl.append('\n').append(dialect.getCreateIndexString(index, metadata.getFullTableName()));
+            }
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(ddl.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    /**
+     * Reads the recorded fingerprint, or null if none was recorded yet.
+     */
+    private String readFingerprint(Connection connection) {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT fingerprint FROM " + FINGERPRINT_TABLE)) {
+            return rs.next() ? rs.getString(1) : null;
+        } catch (SQLException e) {
+            // The table does not exist until the first update
+            logger.debug("No schema fingerprint recorded: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    private void writeFingerprint(Connection connection, String fingerprint) throws SQLException {
+        String createTable = """
+            CREATE TABLE IF NOT EXISTS %s (
+                fingerprint VARCHAR(64) PRIMARY KEY,
+                applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+            )
+            """.formatted(FINGERPRINT_TABLE);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(createTable);
+            statement.execute("DELETE FROM " + FINGERPRINT_TABLE);
+        }
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "INSERT INTO " + FINGERPRINT_TABLE + " (fingerprint) VALUES (?)")) {
+            stmt.setString(1, fingerprint);
+            stmt.executeUpdate();
+        }
+    }
+    
+    private List<EntityMetadata> sortedByTableName() {
+        List<EntityMetadata> sorted = new ArrayList<>(entityMetadataMap.values());
+        sorted.sort(Comparator.comparing(EntityMetadata::getFullTableName));
+        return sorted;
+    }
+    
+    /**
+     * Sets the number of connections used to create independent tables at the same time.
+     * A parallelism of 1 creates all tables on one connection.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+    
+    /**
+     * Groups the entities into levels that only reference tables of earlier levels, sorted by
+     * table name within a level. A reference cycle is broken by creating one of its tables
+     * first; its foreign keys to tables that do not exist yet are put in {@code deferredForeignKeys}
+     * when the dialect can add them afterwards.
+     */
+    private List<List<EntityMetadata>> sortByDependencies(Map<RelationshipMetadata, EntityMetadata> deferredForeignKeys) {
+        Map<EntityMetadata, Set<EntityMetadata>> pending = new HashMap<>();
+        for (EntityMetadata metadata : entityMetadataMap.values()) {
+            Set<EntityMetadata> references = new HashSet<>();
+            for (RelationshipMetadata relationship : getForeignKeys(metadata)) {
+                EntityMetadata target = entityMetadataMap.get(relationship.getTargetEntity());
+                if (target != metadata) {
+                    references.add(target);
+                }
+            }
+            pending.put(metadata, references);
+        }
+        
+        Comparator<EntityMetadata> byTableName = Comparator.comparing(EntityMetadata::getFullTableName);
+        List<List<EntityMetadata>> levels = new ArrayList<>();
+        Set<EntityMetadata> placed = new HashSet<>();
+        while (!pending.isEmpty()) {
+            List<EntityMetadata> level = new ArrayList<>();
+            for (Map.Entry<EntityMetadata, Set<EntityMetadata>> entry : pending.entrySet()) {
+                if (placed.containsAll(entry.getValue())) {
+                    level.add(entry.getKey());
+                }
+            }
+            
+            if (level.isEmpty()) {
+                // Every remaining table is part of or behind a cycle: start with the one missing the fewest references
+                EntityMetadata first = pending.keySet().stream()
+                    .min(Comparator.comparingLong((EntityMetadata metadata) -> pending.get(metadata).stream()
+                        .filter(target -> !placed.contains(target)).count()).thenComparing(byTableName))
+                    .orElseThrow();
+                if (dialect.supportsAddForeignKey()) {
+                    for (RelationshipMetadata relationship : getForeignKeys(first)) {
+                        EntityMetadata target = entityMetadataMap.get(relationship.getTargetEntity());
+                        if (target != first && !placed.contains(target)) {
+                            deferredForeignKeys.put(relationship, first);
+                        }
+                    }
+                }
+                level.add(first);
+            }
+            
+            level.sort(byTableName);
+            for (EntityMetadata metadata : level) {
+                pending.remove(metadata);
+                placed.add(metadata);
+            }
+            levels.add(level);
+        }
+        return levels;
+    }
+    
+    /**
+     * Gets the relationships of an entity that get a foreign key constraint: owning sides
+     * with a join column that reference a registered entity and do not opt out. Partitioned
+     * tables cannot be referenced, because their primary key includes the partition column.
+     */
+    private List<RelationshipMetadata> getForeignKeys(EntityMetadata metadata) {
+        List<RelationshipMetadata> foreignKeys = new ArrayList<>();
+        if (isPartitioned(metadata) && !dialect.supportsPartitionedForeignKeys()) {
+            return foreignKeys;
+        }
+        for (RelationshipMetadata relationship : metadata.getRelationships().values()) {
+            if (relationship.isOwningSide() && relationship.isForeignKeyConstrained()
+                    && relationship.getJoinColumn() != null && !relationship.getJoinColumn().isEmpty()
+                    && entityMetadataMap.containsKey(relationship.getTargetEntity())
+                    && !isPartitioned(entityMetadataMap.get(relationship.getTargetEntity()))) {
+                foreignKeys.add(relationship);
+            }
+        }
+        return foreignKeys;
+    }
+    
+    private boolean isPartitioned(EntityMetadata metadata) {
+        return metadata.getPartitioning() != null && dialect.supportsPartitioning();
+    }
+    
+    /**
+     * Generates the statements that create the initial partitions of a partitioned table:
+     * its list, hash or default partitions, and for range partitioning the current interval
+     * plus the configured number of upcoming ones. Empty for unpartitioned tables.
+     */
+    public List<String> generateCreatePartitionSql(EntityMetadata metadata) {
+        List<String> statements = new ArrayList<>();
+        if (!isPartitioned(metadata)) {
+            return statements;
+        }
+        PartitionMetadata partitioning = metadata.getPartitioning();
+        statements.addAll(dialect.getCreatePartitionStrings(metadata.getFullTableName(), partitioning));
+        if (partitioning.getStrategy() == PartitionStrategy.RANGE) {
+            statements.addAll(dialect.getAddRangePartitionStrings(metadata.getFullTableName(), partitioning,
+                partitioning.upcomingPeriods(LocalDate.now())));
+        }
+        return statements;
+    }
+    
+    private String getForeignKeyName(EntityMetadata metadata, RelationshipMetadata relationship) {
+        return relationship.getForeignKeyName().isEmpty()
+            ? "fk_" + metadata.getTableName() + "_" + relationship.getJoinColumn()
+            : relationship.getForeignKeyName();
+    }
+    
+    private String generateForeignKeyConstraint(EntityMetadata metadata, RelationshipMetadata relationship) {
+        EntityMetadata target = entityMetadataMap.get(relationship.getTargetEntity());
+        return dialect.getForeignKeyConstraintString(getForeignKeyName(metadata, relationship),
+            relationship.getJoinColumn(), target.getFullTableName(), relationship.getReferencedColumn());
+    }
+    
+    private String generateCreateTableSql(EntityMetadata metadata, Set<RelationshipMetadata> deferredForeignKeys) {
         StringBuilder sql = new StringBuilder();
-        sql.append(dialect.getCreateTableString())
+        sql.append(dialect.getCreateTableString(metadata))
            .append(" ")
            .append(metadata.getFullTableName())
            .append(" (");
         
-        List<String> columnDefinitions = new ArrayList<>();
         List<String> constraints = new ArrayList<>();
         
-        // Generate column definitions for basic columns
+        List<String> columnDefinitions = new ArrayList<>(getColumnDefinitions(metadata, true).values());
+        
+        // Generate constraints; on a partitioned table, keys have to include the partition column
+        String partitionColumn = isPartitioned(metadata) ? metadata.getPartitioning().getColumnName() : null;
         for (ColumnMetadata column : metadata.getColumns().values()) {
-            String columnDef = generateColumnDefinition(column);
-            columnDefinitions.add(columnDef);
-            
-            // Generate constraints
-            if (column.isPrimaryKey()) {
-                constraints.add(dialect.getPrimaryKeyString() + " (" + column.getColumnName() + ")");
+            String keyColumns = partitionColumn == null || partitionColumn.equals(column.getColumnName())
+                ? column.getColumnName() : column.getColumnName() + ", " + partitionColumn;
+            if (column.isPrimaryKey() && !(column.getGenerationType() != null && dialect.isIdentityColumnPrimaryKey())) {
+                constraints.add(dialect.getPrimaryKeyString() + " (" + keyColumns + ")");
             }
             
             if (column.isUnique() && !column.isPrimaryKey()) {
-                constraints.add(dialect.getUniqueString() + " (" + column.getColumnName() + ")");
+                constraints.add(dialect.getUniqueString() + " (" + keyColumns + ")");
             }
         }
         
-        // Generate foreign key columns for ManyToOne and OneToOne relationships
-        for (RelationshipMetadata relationship : metadata.getRelationships().values()) {
-            if (relationship.getRelationshipType() == RelationshipType.MANY_TO_ONE ||
-                relationship.getRelationshipType() == RelationshipType.ONE_TO_ONE) {
-                String foreignKeyColumn = generateForeignKeyColumnDefinition(relationship);
-                if (foreignKeyColumn != null) {
-                    columnDefinitions.add(foreignKeyColumn);
-                }
+        for (RelationshipMetadata relationship : getForeignKeys(metadata)) {
+            if (!deferredForeignKeys.contains(relationship)) {
+                constraints.add(generateForeignKeyConstraint(metadata, relationship));
             }
         }
         
@@ -121,18 +581,110 @@ public class SchemaGenerator {
         
         sql.append(")");
         
+        String tableOptions = dialect.getTableOptionsString(metadata);
+        if (!tableOptions.isEmpty()) {
+            sql.append(" ").append(tableOptions);
+        }
+        
+        if (isPartitioned(metadata)) {
+            sql.append(" ").append(dialect.getPartitionByString(metadata.getPartitioning()));
+        }
+        
         return sql.toString();
     }
     
-    private String generateColumnDefinition(ColumnMetadata column) {
+    /**
+     * Gets the definition of every column of the entity's table, keyed by column name: the basic
+     * columns followed by the join columns of many-to-one and one-to-one relationships.
+     *
+     * @param notNull whether non-nullable columns are declared NOT NULL
+     */
+    private Map<String, String> getColumnDefinitions(EntityMetadata metadata, boolean notNull) {
+        Map<String, String> definitions = new LinkedHashMap<>();
+        for (ColumnMetadata column : metadata.getColumns().values()) {
+            definitions.put(column.getColumnName(), generateColumnDefinition(column, notNull));
+        }
+        
+        // Generate foreign key columns for ManyToOne and OneToOne relationships
+        for (RelationshipMetadata relationship : metadata.getRelationships().values()) {
+            if (relationship.getRelationshipType() == RelationshipType.MANY_TO_ONE ||
+                relationship.getRelationshipType() == RelationshipType.ONE_TO_ONE) {
+                String foreignKeyColumn = generateForeignKeyColumnDefinition(relationship, notNull);
+                if (foreignKeyColumn != null) {
+                    definitions.put(relationship.getJoinColumn(), foreignKeyColumn);
+                }
+            }
+        }
+        return definitions;
+    }
+    
+    /**
+     * Generates the CREATE INDEX statements for the indexes declared in {@code @Table(indexes = ...)},
+     * followed by one index per join column that no declared index starts with.
+     */
+    public List<String> generateCreateIndexSql(EntityMetadata metadata) {
+        List<String> statements = new ArrayList<>();
+        for (IndexMetadata index : collectIndexes(metadata)) {
+            statements.add(generateCreateIndexSql(metadata, index));
+        }
+        return statements;
+    }
+    
+    private String generateCreateIndexSql(EntityMetadata metadata, IndexMetadata index) {
+        if (index.isPartial() && !dialect.supportsPartialIndexes()) {
+            if (index.isUnique()) {
+                // Enforcing uniqueness on every row would reject data the mapping allows
+                throw MappingException.invalidAnnotation(metadata.getEntityClass(), "indexes",
+                    "partial unique index " + index.getName() + " is not supported by " + dialect.getClass().getSimpleName());
+            }
+            logger.warn("{} does not support partial indexes, creating {} on all rows",
+                dialect.getClass().getSimpleName(), index.getName());
+        }
+        return dialect.getCreateIndexString(index, metadata.getFullTableName());
+    }
+    
+    /**
+     * Gets the declared indexes of an entity plus one per join column that no declared index starts with.
+     */
+    private List<IndexMetadata> collectIndexes(EntityMetadata metadata) {
+        List<IndexMetadata> indexes = new ArrayList<>(metadata.getIndexes());
+        List<RelationshipMetadata> foreignKeys = getForeignKeys(metadata);
+        for (RelationshipMetadata relationship : metadata.getRelationships().values()) {
+            String joinColumn = relationship.getJoinColumn();
+            if (!relationship.isOwningSide() || !relationship.isJoinColumnIndexed()
+                    || joinColumn == null || joinColumn.isEmpty() || isIndexLeadingColumn(metadata, joinColumn)) {
+                continue;
+            }
+            if (dialect.indexesForeignKeys() && foreignKeys.contains(relationship)) {
+                continue;
+            }
+            indexes.add(new IndexMetadata("idx_" + metadata.getTableName() + "_" + joinColumn,
+                Collections.singletonList(joinColumn), false, null, Collections.emptyList()));
+        }
+        return indexes;
+    }
+    
+    private boolean isIndexLeadingColumn(EntityMetadata metadata, String column) {
+        for (IndexMetadata index : metadata.getIndexes()) {
+            String leading = index.getColumns().get(0).split("\\s+", 2)[0];
+            if (leading.equalsIgnoreCase(column) && !index.isPartial()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private String generateColumnDefinition(ColumnMetadata column, boolean notNull) {
         StringBuilder columnDef = new StringBuilder();
         
+        boolean identity = column.isPrimaryKey() && column.getGenerationType() != null;
+        String columnType = dialect.getColumnType(column);
         columnDef.append(column.getColumnName())
                  .append(" ")
-                 .append(dialect.getColumnType(column));
+                 .append(identity ? dialect.getIdentityColumnType(columnType) : columnType);
         
         // Add identity/auto-increment for primary keys
-        if (column.isPrimaryKey() && column.getGenerationType() != null) {
+        if (identity) {
             String identityString = dialect.getIdentityColumnString();
             if (!identityString.isEmpty()) {
                 columnDef.append(" ").append(identityString);
@@ -140,7 +692,7 @@ public class SchemaGenerator {
         }
         
         // Add NOT NULL constraint
-        if (!column.isNullable()) {
+        if (notNull && !column.isNullable()) {
             columnDef.append(" ").append(dialect.getNotNullString());
         }
         
@@ -150,7 +702,7 @@ public class SchemaGenerator {
     /**
      * Generates a foreign key column definition for ManyToOne and OneToOne relationships.
      */
-    private String generateForeignKeyColumnDefinition(RelationshipMetadata relationship) {
+    private String generateForeignKeyColumnDefinition(RelationshipMetadata relationship, boolean notNull) {
         String joinColumn = relationship.getJoinColumn();
         if (joinColumn == null || joinColumn.isEmpty()) {
             return null;
@@ -171,7 +723,7 @@ public class SchemaGenerator {
         }
         
         // Add NOT NULL constraint if the relationship is not optional
-        if (!relationship.isOptional()) {
+        if (notNull && !relationship.isOptional()) {
             columnDef.append(" ").append(dialect.getNotNullString());
         }
         
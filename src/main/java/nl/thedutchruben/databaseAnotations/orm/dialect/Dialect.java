@@ -1,13 +1,113 @@
 package nl.thedutchruben.databaseAnotations.orm.dialect;
 
+import nl.thedutchruben.databaseAnotations.orm.annotations.StorageOption;
 import nl.thedutchruben.databaseAnotations.orm.core.ColumnMetadata;
+import nl.thedutchruben.databaseAnotations.orm.core.EntityMetadata;
+import nl.thedutchruben.databaseAnotations.orm.core.IndexMetadata;
+import nl.thedutchruben.databaseAnotations.orm.core.PartitionMetadata;
+import nl.thedutchruben.databaseAnotations.orm.util.TypeUtils;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Base class for all database dialects.
  * Provides database-specific SQL generation and feature support.
+ * Each dialect keeps a registry of {@link TypeMapping}s that decides the column type of a Java type
+ * and how its values are bound and read; the base class registers the standard SQL types and
+ * dialects replace the ones they store differently.
  */
 public abstract class Dialect {
     
+    private final Map<Class<?>, TypeMapping> typeMappings = new ConcurrentHashMap<>();
+    
+    protected Dialect() {
+        registerType(String.class, new TypeMapping(column -> "VARCHAR(" + column.getLength() + ")", Types.VARCHAR,
+            (stmt, i, v) -> stmt.setString(i, (String) v), ResultSet::getString));
+        registerType(Integer.class, new TypeMapping("INTEGER", Types.INTEGER,
+            (stmt, i, v) -> stmt.setInt(i, ((Number) v).intValue()), Dialect::readInt));
+        registerType(Long.class, new TypeMapping("BIGINT", Types.BIGINT,
+            (stmt, i, v) -> stmt.setLong(i, ((Number) v).longValue()), Dialect::readLong));
+        registerType(Short.class, new TypeMapping("SMALLINT", Types.SMALLINT,
+            (stmt, i, v) -> stmt.setShort(i, ((Number) v).shortValue()), (rs, i) -> {
+                short value = rs.getShort(i);
+                return rs.wasNull() ? null : value;
+            }));
+        registerType(Byte.class, new TypeMapping("SMALLINT", Types.TINYINT,
+            (stmt, i, v) -> stmt.setByte(i, ((Number) v).byteValue()), (rs, i) -> {
+                byte value = rs.getByte(i);
+                return rs.wasNull() ? null : value;
+            }));
+        registerType(Double.class, new TypeMapping(
+            column -> column.getPrecision() > 0 ? getDecimalType(column) : "DOUBLE PRECISION", Types.DOUBLE,
+            (stmt, i, v) -> stmt.setDouble(i, ((Number) v).doubleValue()), (rs, i) -> {
+                double value = rs.getDouble(i);
+                return rs.wasNull() ? null : value;
+            }));
+        registerType(Float.class, new TypeMapping("REAL", Types.REAL,
+            (stmt, i, v) -> stmt.setFloat(i, ((Number) v).floatValue()), (rs, i) -> {
+                float value = rs.getFloat(i);
+                return rs.wasNull() ? null : value;
+            }));
+        registerType(Boolean.class, new TypeMapping("BOOLEAN", Types.BOOLEAN,
+            (stmt, i, v) -> stmt.setBoolean(i, (Boolean) v), (rs, i) -> {
+                boolean value = rs.getBoolean(i);
+                return rs.wasNull() ? null : value;
+            }));
+        registerType(BigDecimal.class, new TypeMapping(this::getDecimalType, Types.DECIMAL,
+            (stmt, i, v) -> stmt.setBigDecimal(i, (BigDecimal) v), ResultSet::getBigDecimal));
+        registerType(byte[].class, new TypeMapping(column -> "VARBINARY(" + column.getLength() + ")", Types.VARBINARY,
+            (stmt, i, v) -> stmt.setBytes(i, (byte[]) v), ResultSet::getBytes));
+        registerType(UUID.class, new TypeMapping("UUID", Types.OTHER,
+            PreparedStatement::setObject, (rs, i) -> rs.getObject(i, UUID.class)));
+        
+        registerType(LocalDate.class, new TypeMapping("DATE", Types.DATE,
+            PreparedStatement::setObject, (rs, i) -> rs.getObject(i, LocalDate.class)));
+        registerType(LocalTime.class, new TypeMapping("TIME", Types.TIME,
+            PreparedStatement::setObject, (rs, i) -> rs.getObject(i, LocalTime.class)));
+        registerType(LocalDateTime.class, new TypeMapping("TIMESTAMP", Types.TIMESTAMP,
+            PreparedStatement::setObject, (rs, i) -> rs.getObject(i, LocalDateTime.class)));
+        registerType(OffsetDateTime.class, new TypeMapping("TIMESTAMP WITH TIME ZONE", Types.TIMESTAMP_WITH_TIMEZONE,
+            PreparedStatement::setObject, (rs, i) -> rs.getObject(i, OffsetDateTime.class)));
+        registerType(Instant.class, new TypeMapping("TIMESTAMP WITH TIME ZONE", Types.TIMESTAMP_WITH_TIMEZONE,
+            (stmt, i, v) -> stmt.setObject(i, ((Instant) v).atOffset(ZoneOffset.UTC)), (rs, i) -> {
+                OffsetDateTime value = rs.getObject(i, OffsetDateTime.class);
+                return value != null ? value.toInstant() : null;
+            }));
+        registerType(java.sql.Date.class, new TypeMapping("DATE", Types.DATE,
+            (stmt, i, v) -> stmt.setDate(i, (java.sql.Date) v), ResultSet::getDate));
+        registerType(java.sql.Time.class, new TypeMapping("TIME", Types.TIME,
+            (stmt, i, v) -> stmt.setTime(i, (java.sql.Time) v), ResultSet::getTime));
+        registerType(Timestamp.class, new TypeMapping("TIMESTAMP", Types.TIMESTAMP,
+            (stmt, i, v) -> stmt.setTimestamp(i, (Timestamp) v), ResultSet::getTimestamp));
+        // A Timestamp is a java.util.Date, so it can be assigned to the field as read
+        registerType(java.util.Date.class, new TypeMapping("TIMESTAMP", Types.TIMESTAMP,
+            (stmt, i, v) -> stmt.setTimestamp(i, new Timestamp(((java.util.Date) v).getTime())), ResultSet::getTimestamp));
+        
+        // Anything else is left to the driver
+        registerType(Object.class, new TypeMapping(column -> "VARCHAR(" + column.getLength() + ")", Types.VARCHAR,
+            PreparedStatement::setObject, ResultSet::getObject));
+    }
+    
     /**
      * Gets the SQL for limiting query results.
      */
@@ -23,6 +123,23 @@ public abstract class Dialect {
      */
     public abstract String getIdentityColumnString();
     
+    /**
+     * Gets the column type of a generated primary key whose mapped type is {@code columnType}.
+     * Dialects that generate ids through a pseudo-type replace the type here; columns that
+     * reference the key keep the mapped type.
+     */
+    public String getIdentityColumnType(String columnType) {
+        return columnType;
+    }
+    
+    /**
+     * Checks if the identity column string declares the column as the primary key itself,
+     * so no separate primary key constraint may follow.
+     */
+    public boolean isIdentityColumnPrimaryKey() {
+        return false;
+    }
+    
     /**
      * Checks if this dialect supports sequences.
      */
@@ -38,10 +155,183 @@ public abstract class Dialect {
      */
     public abstract String getIdentitySelectString();
     
+    /**
+     * Checks if the driver returns one generated key per row after executing a JDBC batch.
+     */
+    public boolean supportsBatchGeneratedKeys() {
+        return true;
+    }
+    
+    /**
+     * Gets the driver properties recommended for this database, keyed by property name.
+     * They are passed to the driver of every pool created by the configuration, unless
+     * overridden with {@code orm.jdbc.<name>} properties.
+     */
+    public Map<String, String> getDefaultDataSourceProperties() {
+        return new LinkedHashMap<>();
+    }
+    
+    /**
+     * Checks if locked rows can be skipped with SKIP LOCKED.
+     */
+    public boolean supportsSkipLocked() {
+        return true;
+    }
+    
+    /**
+     * Checks if lock waits can be refused with NOWAIT.
+     */
+    public boolean supportsNoWait() {
+        return true;
+    }
+    
+    /**
+     * Gets the row locking clause appended after ORDER BY and LIMIT. When SKIP LOCKED or
+     * NOWAIT is not supported, the plain clause is returned and the statement waits for locks.
+     */
+    public String getForUpdateString(boolean skipLocked, boolean noWait) {
+        if (skipLocked && supportsSkipLocked()) {
+            return " FOR UPDATE SKIP LOCKED";
+        }
+        if (noWait && supportsNoWait()) {
+            return " FOR UPDATE NOWAIT";
+        }
+        return " FOR UPDATE";
+    }
+    
+    /**
+     * Checks if a transaction that failed with this exception can safely be run again,
+     * e.g. after a deadlock or serialization failure. Chained exceptions are inspected too.
+     */
+    public boolean isRetryable(SQLException e) {
+        for (Throwable cause : e) {
+            if (cause instanceof SQLException && isRetryableError((SQLException) cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Classifies a single exception; the default accepts the standard serialization failure state.
+     */
+    protected boolean isRetryableError(SQLException e) {
+        return "40001".equals(e.getSQLState());
+    }
+    
     /**
      * Maps Java types to database-specific column types.
+     * An explicit {@code columnDefinition} wins over the registered type mapping.
      */
-    public abstract String getColumnType(ColumnMetadata columnMeta);
+    public String getColumnType(ColumnMetadata columnMeta) {
+        if (!columnMeta.getColumnDefinition().isEmpty()) {
+            return columnMeta.getColumnDefinition();
+        }
+        return getTypeMapping(columnMeta.getJavaType()).getSqlType(columnMeta);
+    }
+    
+    /**
+     * Gets the mapping for a Java type. Primitives use the mapping of their wrapper, enums are
+     * stored by ordinal, and types without a mapping are passed to the driver as they are.
+     */
+    public TypeMapping getTypeMapping(Class<?> javaType) {
+        Class<?> type = TypeUtils.getWrapperType(javaType);
+        TypeMapping mapping = typeMappings.get(type);
+        if (mapping != null) {
+            return mapping;
+        }
+        if (!type.isEnum() && type.getSuperclass() != null && type.getSuperclass().isEnum()) {
+            // Constants with a body are anonymous subclasses of their enum
+            type = type.getSuperclass();
+        }
+        if (type.isEnum()) {
+            return typeMappings.computeIfAbsent(type, this::createEnumMapping);
+        }
+        return typeMappings.get(Object.class);
+    }
+    
+    /**
+     * Binds a value by its own type, for parameters that are not tied to a mapped column.
+     */
+    public void bindValue(PreparedStatement stmt, int index, Object value) throws SQLException {
+        if (value == null) {
+            stmt.setObject(index, null);
+        } else {
+            getTypeMapping(value.getClass()).bind(stmt, index, value);
+        }
+    }
+    
+    /**
+     * Registers the mapping for a Java type, replacing the mapping registered before.
+     */
+    protected void registerType(Class<?> javaType, TypeMapping mapping) {
+        typeMappings.put(javaType, mapping);
+    }
+    
+    /**
+     * Gets the column type for exact decimals, using the column's precision and scale when set.
+     */
+    protected String getDecimalType(ColumnMetadata column) {
+        if (column.getPrecision() > 0) {
+            return "DECIMAL(" + column.getPrecision() + "," + column.getScale() + ")";
+        }
+        return "NUMERIC";
+    }
+    
+    /**
+     * Gets the column type for the ordinals of an enum with the given number of constants.
+     */
+    protected String getEnumColumnType(int constants) {
+        return "SMALLINT";
+    }
+    
+    /**
+     * Creates the mapping that stores an enum by ordinal, so new constants must be added at the end.
+     */
+    protected TypeMapping createEnumMapping(Class<?> enumType) {
+        Object[] constants = enumType.getEnumConstants();
+        return new TypeMapping(getEnumColumnType(constants.length), Types.SMALLINT,
+            (stmt, i, v) -> stmt.setShort(i, (short) ((Enum<?>) v).ordinal()), (rs, i) -> {
+                int ordinal = rs.getInt(i);
+                if (rs.wasNull()) {
+                    return null;
+                }
+                if (ordinal < 0 || ordinal >= constants.length) {
+                    throw new SQLException("No constant of " + enumType.getName() + " with ordinal " + ordinal);
+                }
+                return constants[ordinal];
+            });
+    }
+    
+    /**
+     * Creates a mapping that stores UUIDs as 16 bytes, for databases without a UUID type.
+     */
+    protected static TypeMapping uuidAsBytes(String sqlType) {
+        return new TypeMapping(sqlType, Types.BINARY, (stmt, i, v) -> {
+            UUID uuid = (UUID) v;
+            stmt.setBytes(i, ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array());
+        }, (rs, i) -> {
+            byte[] bytes = rs.getBytes(i);
+            if (bytes == null) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            return new UUID(buffer.getLong(), buffer.getLong());
+        });
+    }
+    
+    protected static Object readInt(ResultSet rs, int index) throws SQLException {
+        int value = rs.getInt(index);
+        return rs.wasNull() ? null : value;
+    }
+    
+    protected static Object readLong(ResultSet rs, int index) throws SQLException {
+        long value = rs.getLong(index);
+        return rs.wasNull() ? null : value;
+    }
     
     /**
      * Gets the SQL keyword for dropping a table if it exists.
@@ -57,6 +347,41 @@ public abstract class Dialect {
         return "CREATE TABLE";
     }
     
+    /**
+     * Gets the SQL for creating the entity's table, including storage options that go before the table name.
+     */
+    public String getCreateTableString(EntityMetadata metadata) {
+        return getCreateTableString();
+    }
+    
+    /**
+     * Gets the table options that follow the column list, or an empty string.
+     */
+    public String getTableOptionsString(EntityMetadata metadata) {
+        return "";
+    }
+    
+    /**
+     * Checks if a storage option is applied; unsupported options are ignored.
+     */
+    public boolean supportsStorageOption(StorageOption option) {
+        return false;
+    }
+    
+    /**
+     * Checks if a supported storage option can be applied to the entity's table.
+     */
+    public boolean supportsStorageOption(StorageOption option, EntityMetadata metadata) {
+        return supportsStorageOption(option);
+    }
+    
+    /**
+     * Gets the ALTER TABLE clause that adds a column.
+     */
+    public String getAddColumnString() {
+        return "ADD COLUMN";
+    }
+    
     /**
      * Gets the SQL for adding a primary key constraint.
      */
@@ -71,6 +396,45 @@ public abstract class Dialect {
         return "FOREIGN KEY";
     }
     
+    /**
+     * Gets the named foreign key constraint for a column, as used inside CREATE TABLE
+     * and after ALTER TABLE ... ADD.
+     */
+    public String getForeignKeyConstraintString(String constraintName, String column,
+                                                String referencedTable, String referencedColumn) {
+        return "CONSTRAINT " + constraintName + " " + getForeignKeyString() + " (" + column + ")"
+            + " REFERENCES " + referencedTable + " (" + referencedColumn + ")";
+    }
+    
+    /**
+     * Checks if a foreign key constraint can be added to an existing table.
+     * Without it, constraints that reference tables created later are declared inline.
+     */
+    public boolean supportsAddForeignKey() {
+        return true;
+    }
+    
+    /**
+     * Gets the statement that drops a foreign key constraint.
+     */
+    public String getDropForeignKeyString(String tableName, String constraintName) {
+        return "ALTER TABLE " + tableName + " DROP CONSTRAINT " + constraintName;
+    }
+    
+    /**
+     * Checks if the database creates an index for every foreign key constraint by itself.
+     */
+    public boolean indexesForeignKeys() {
+        return false;
+    }
+    
+    /**
+     * Checks if tables can be created concurrently on separate connections.
+     */
+    public boolean supportsParallelDdl() {
+        return true;
+    }
+    
     /**
      * Gets the SQL for adding a unique constraint.
      */
@@ -78,6 +442,133 @@ public abstract class Dialect {
         return "UNIQUE";
     }
     
+    /**
+     * Checks if an index can be limited to the rows matching a WHERE condition.
+     */
+    public boolean supportsPartialIndexes() {
+        return false;
+    }
+    
+    /**
+     * Checks if non-key columns can be stored in an index with INCLUDE.
+     */
+    public boolean supportsIndexInclude() {
+        return false;
+    }
+    
+    /**
+     * Gets the CREATE INDEX statement for an index on the given table. Without INCLUDE support,
+     * included columns are appended to the key of non-unique indexes and dropped from unique ones,
+     * whose uniqueness they would change. The condition of a partial index is only rendered
+     * when {@link #supportsPartialIndexes()}.
+     */
+    public String getCreateIndexString(IndexMetadata index, String tableName) {
+        List<String> columns = new ArrayList<>(index.getColumns());
+        if (!supportsIndexInclude() && !index.isUnique()) {
+            columns.addAll(index.getInclude());
+        }
+        
+        StringBuilder sql = new StringBuilder("CREATE ");
+        if (index.isUnique()) {
+            sql.append("UNIQUE ");
+        }
+        sql.append("INDEX ").append(index.getName())
+           .append(" ON ").append(tableName)
+           .append(" (").append(String.join(", ", columns)).append(")");
+        
+        if (supportsIndexInclude() && !index.getInclude().isEmpty()) {
+            sql.append(" INCLUDE (").append(String.join(", ", index.getInclude())).append(")");
+        }
+        if (index.isPartial() && supportsPartialIndexes()) {
+            sql.append(" WHERE ").append(index.getWhere());
+        }
+        return sql.toString();
+    }
+    
+    /**
+     * Checks if tables can be partitioned. Without it, partitioned entities get a plain table.
+     */
+    public boolean supportsPartitioning() {
+        return false;
+    }
+    
+    /**
+     * Checks if a partitioned table can have foreign keys to other tables.
+     */
+    public boolean supportsPartitionedForeignKeys() {
+        return false;
+    }
+    
+    /**
+     * Gets the clause appended to CREATE TABLE for a partitioned table.
+     */
+    public String getPartitionByString(PartitionMetadata partitioning) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support partitioning");
+    }
+    
+    /**
+     * Gets the statements that create the list, hash or default partitions of a new table.
+     * Range partitions are added with {@link #getAddRangePartitionStrings}.
+     */
+    public List<String> getCreatePartitionStrings(String tableName, PartitionMetadata partitioning) {
+        return Collections.emptyList();
+    }
+    
+    /**
+     * Gets the statements that add range partitions for the intervals starting at the given dates,
+     * which all follow the newest existing range partition.
+     */
+    public List<String> getAddRangePartitionStrings(String tableName, PartitionMetadata partitioning,
+                                                    List<LocalDate> periodStarts) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support partitioning");
+    }
+    
+    /**
+     * Gets the name of the table's partition with the given suffix.
+     */
+    public String getPartitionName(String tableName, String suffix) {
+        return tableName + "_" + suffix;
+    }
+    
+    /**
+     * Gets a query that lists the partition names of the table whose full name, as used in the DDL,
+     * is its single parameter.
+     */
+    public String getPartitionNamesQuery() {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support partitioning");
+    }
+    
+    /**
+     * Gets the statement that detaches a partition, keeping it as a standalone table.
+     */
+    public String getDetachPartitionString(String tableName, String partitionName) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support detaching partitions");
+    }
+    
+    /**
+     * Gets the statement that drops a partition and its rows.
+     */
+    public String getDropPartitionString(String tableName, String partitionName) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support partitioning");
+    }
+    
+    /**
+     * Gets a list partition value as a literal of the partition column's type.
+     */
+    protected String getPartitionValueLiteral(PartitionMetadata partitioning, String value) {
+        Class<?> type = partitioning.getColumn().getJavaType();
+        boolean numeric = Number.class.isAssignableFrom(type)
+            || (type.isPrimitive() && type != boolean.class && type != char.class);
+        return numeric ? value : "'" + escape(value) + "'";
+    }
+    
+    /**
+     * Gets the partition name suffix for a list partition value.
+     */
+    protected String getListPartitionSuffix(String value) {
+        return "p_" + value.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9_]", "_");
+    }
+    
     /**
      * Gets the SQL for adding a not null constraint.
      */
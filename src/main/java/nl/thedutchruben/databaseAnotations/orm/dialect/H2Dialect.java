@@ -2,11 +2,30 @@ package nl.thedutchruben.databaseAnotations.orm.dialect;
 
 import nl.thedutchruben.databaseAnotations.orm.core.ColumnMetadata;
 
+import java.sql.SQLException;
+import java.time.LocalTime;
+
 /**
  * H2 database dialect.
  */
 public class H2Dialect extends Dialect {
     
+    public H2Dialect() {
+        registerType(Byte.class, getTypeMapping(Byte.class).withSqlType("TINYINT"));
+        registerType(LocalTime.class, getTypeMapping(LocalTime.class).withSqlType("TIME(6)"));
+    }
+    
+    @Override
+    protected String getDecimalType(ColumnMetadata column) {
+        // A bare NUMERIC has scale 0 in H2, DECFLOAT keeps any scale
+        return column.getPrecision() > 0 ? super.getDecimalType(column) : "DECFLOAT";
+    }
+    
+    @Override
+    protected String getEnumColumnType(int constants) {
+        return constants <= Byte.MAX_VALUE ? "TINYINT" : "SMALLINT";
+    }
+    
     @Override
     public String getLimitString(String sql, int limit) {
         return sql + " LIMIT " + limit;
@@ -27,6 +46,17 @@ public class H2Dialect extends Dialect {
         return true;
     }
     
+    @Override
+    public boolean supportsSkipLocked() {
+        return false; // added in H2 2.2
+    }
+    
+    @Override
+    protected boolean isRetryableError(SQLException e) {
+        // deadlock, lock timeout, concurrent update of the same row
+        return "40001".equals(e.getSQLState()) || "HYT00".equals(e.getSQLState()) || e.getErrorCode() == 90131;
+    }
+    
     @Override
     public String getSequenceNextValString(String sequenceName) {
         return "SELECT nextval('" + sequenceName + "')";
@@ -37,40 +67,6 @@ public class H2Dialect extends Dialect {
         return "SELECT IDENTITY()";
     }
     
-    @Override
-    public String getColumnType(ColumnMetadata columnMeta) {
-        Class<?> javaType = columnMeta.getJavaType();
-        
-        if (!columnMeta.getColumnDefinition().isEmpty()) {
-            return columnMeta.getColumnDefinition();
-        }
-        
-        if (javaType == String.class) {
-            return "VARCHAR(" + columnMeta.getLength() + ")";
-        } else if (javaType == Integer.class || javaType == int.class) {
-            return "INTEGER";
-        } else if (javaType == Long.class || javaType == long.class) {
-            return "BIGINT";
-        } else if (javaType == Double.class || javaType == double.class) {
-            if (columnMeta.getPrecision() > 0) {
-                return "DECIMAL(" + columnMeta.getPrecision() + "," + columnMeta.getScale() + ")";
-            }
-            return "DOUBLE";
-        } else if (javaType == Float.class || javaType == float.class) {
-            return "REAL";
-        } else if (javaType == Boolean.class || javaType == boolean.class) {
-            return "BOOLEAN";
-        } else if (javaType == java.sql.Date.class) {
-            return "DATE";
-        } else if (javaType == java.sql.Time.class) {
-            return "TIME";
-        } else if (javaType == java.sql.Timestamp.class || javaType == java.util.Date.class) {
-            return "TIMESTAMP";
-        } else {
-            return "VARCHAR(255)";
-        }
-    }
-    
     @Override
     public String getDropTableString() {
         return "DROP TABLE IF EXISTS";
@@ -1,12 +1,83 @@
 package nl.thedutchruben.databaseAnotations.orm.dialect;
 
+import nl.thedutchruben.databaseAnotations.orm.annotations.StorageOption;
 import nl.thedutchruben.databaseAnotations.orm.core.ColumnMetadata;
+import nl.thedutchruben.databaseAnotations.orm.core.EntityMetadata;
+import nl.thedutchruben.databaseAnotations.orm.core.PartitionMetadata;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
 
 /**
  * MySQL database dialect.
  */
 public class MySQLDialect extends Dialect {
     
+    /**
+     * Longest string or binary column kept inline; four bytes per character stay under the 64 KB row limit.
+     */
+    private static final int MAX_INLINE_LENGTH = 16383;
+    
+    /**
+     * Range partition that holds rows beyond the newest interval until new partitions are split off it.
+     */
+    private static final String MAX_VALUE_PARTITION = "pmax";
+    
+    public MySQLDialect() {
+        registerType(String.class, getTypeMapping(String.class).withSqlType(column ->
+            column.getLength() <= MAX_INLINE_LENGTH ? "VARCHAR(" + column.getLength() + ")" : "LONGTEXT"));
+        registerType(byte[].class, getTypeMapping(byte[].class).withSqlType(column ->
+            column.getLength() <= MAX_INLINE_LENGTH ? "VARBINARY(" + column.getLength() + ")" : "LONGBLOB"));
+        registerType(Integer.class, getTypeMapping(Integer.class).withSqlType("INT"));
+        registerType(Byte.class, getTypeMapping(Byte.class).withSqlType("TINYINT"));
+        registerType(Float.class, getTypeMapping(Float.class).withSqlType("FLOAT"));
+        registerType(Double.class, getTypeMapping(Double.class).withSqlType(column ->
+            column.getPrecision() > 0 ? getDecimalType(column) : "DOUBLE"));
+        registerType(UUID.class, uuidAsBytes("BINARY(16)"));
+        registerType(LocalTime.class, getTypeMapping(LocalTime.class).withSqlType("TIME(6)"));
+        registerType(LocalDateTime.class, getTypeMapping(LocalDateTime.class).withSqlType("DATETIME(6)"));
+        registerType(Timestamp.class, getTypeMapping(Timestamp.class).withSqlType("TIMESTAMP(6)"));
+        registerType(java.util.Date.class, getTypeMapping(java.util.Date.class).withSqlType("TIMESTAMP(6)"));
+        
+        // MySQL has no type that keeps an offset, and TIMESTAMP ends in 2038, so instants are stored as UTC
+        registerType(Instant.class, new TypeMapping("DATETIME(6)", Types.TIMESTAMP,
+            (stmt, i, v) -> stmt.setObject(i, LocalDateTime.ofInstant((Instant) v, ZoneOffset.UTC)), (rs, i) -> {
+                LocalDateTime value = rs.getObject(i, LocalDateTime.class);
+                return value != null ? value.toInstant(ZoneOffset.UTC) : null;
+            }));
+        registerType(OffsetDateTime.class, new TypeMapping("DATETIME(6)", Types.TIMESTAMP,
+            (stmt, i, v) -> stmt.setObject(i, ((OffsetDateTime) v).withOffsetSameInstant(ZoneOffset.UTC).toLocalDateTime()),
+            (rs, i) -> {
+                LocalDateTime value = rs.getObject(i, LocalDateTime.class);
+                return value != null ? value.atOffset(ZoneOffset.UTC) : null;
+            }));
+        registerType(Object.class, getTypeMapping(Object.class).withSqlType("TEXT"));
+    }
+    
+    @Override
+    protected String getDecimalType(ColumnMetadata column) {
+        // A bare DECIMAL is DECIMAL(10,0) and would round away the fraction
+        return column.getPrecision() > 0 ? super.getDecimalType(column) : "DECIMAL(38,10)";
+    }
+    
+    @Override
+    protected String getEnumColumnType(int constants) {
+        return constants <= Byte.MAX_VALUE ? "TINYINT" : "SMALLINT";
+    }
+    
     @Override
     public String getLimitString(String sql, int limit) {
         return sql + " LIMIT " + limit;
@@ -28,51 +99,148 @@ public class MySQLDialect extends Dialect {
     }
     
     @Override
-    public String getSequenceNextValString(String sequenceName) {
-        throw new UnsupportedOperationException("MySQL does not support sequences");
+    public String getDropForeignKeyString(String tableName, String constraintName) {
+        return "ALTER TABLE " + tableName + " DROP FOREIGN KEY " + constraintName;
     }
     
     @Override
-    public String getIdentitySelectString() {
-        return "SELECT LAST_INSERT_ID()";
+    public boolean indexesForeignKeys() {
+        return true; // InnoDB creates an index for each constraint that no other index covers
     }
     
     @Override
-    public String getColumnType(ColumnMetadata columnMeta) {
-        Class<?> javaType = columnMeta.getJavaType();
-        
-        if (!columnMeta.getColumnDefinition().isEmpty()) {
-            return columnMeta.getColumnDefinition();
+    public String getTableOptionsString(EntityMetadata metadata) {
+        List<String> options = new ArrayList<>();
+        if (metadata.getEngine() != null) {
+            options.add("ENGINE=" + metadata.getEngine());
         }
-        
-        if (javaType == String.class) {
-            return "VARCHAR(" + columnMeta.getLength() + ")";
-        } else if (javaType == Integer.class || javaType == int.class) {
-            return "INT";
-        } else if (javaType == Long.class || javaType == long.class) {
-            return "BIGINT";
-        } else if (javaType == Double.class || javaType == double.class) {
-            if (columnMeta.getPrecision() > 0) {
-                return "DECIMAL(" + columnMeta.getPrecision() + "," + columnMeta.getScale() + ")";
-            }
-            return "DOUBLE";
-        } else if (javaType == Float.class || javaType == float.class) {
-            return "FLOAT";
-        } else if (javaType == Boolean.class || javaType == boolean.class) {
-            return "BOOLEAN";
-        } else if (javaType == java.sql.Date.class) {
-            return "DATE";
-        } else if (javaType == java.sql.Time.class) {
-            return "TIME";
-        } else if (javaType == java.sql.Timestamp.class || javaType == java.util.Date.class) {
-            return "TIMESTAMP";
-        } else {
-            return "TEXT";
+        if (metadata.getStorageOptions().contains(StorageOption.COMPRESSED)) {
+            options.add("ROW_FORMAT=COMPRESSED");
+        }
+        return String.join(" ", options);
+    }
+    
+    @Override
+    public boolean supportsStorageOption(StorageOption option) {
+        return option == StorageOption.COMPRESSED;
+    }
+    
+    @Override
+    public boolean supportsPartitioning() {
+        return true; // partitioned InnoDB tables cannot have foreign keys
+    }
+    
+    @Override
+    public String getPartitionByString(PartitionMetadata partitioning) {
+        switch (partitioning.getStrategy()) {
+            case LIST:
+                List<String> partitions = new ArrayList<>();
+                for (String value : partitioning.getValues()) {
+                    partitions.add("PARTITION " + getListPartitionSuffix(value)
+                        + " VALUES IN (" + getPartitionValueLiteral(partitioning, value) + ")");
+                }
+                return "PARTITION BY LIST COLUMNS(" + partitioning.getColumnName() + ") ("
+                    + String.join(", ", partitions) + ")";
+            case HASH:
+                // KEY hashes any column type, HASH only integer expressions
+                return "PARTITION BY KEY(" + partitioning.getColumnName() + ") PARTITIONS " + partitioning.getPartitions();
+            default:
+                // Range partitions are split off the catch-all partition as they are added
+                return "PARTITION BY " + getRangeExpression(partitioning) + " (" + getMaxValuePartition(partitioning) + ")";
+        }
+    }
+    
+    @Override
+    public List<String> getAddRangePartitionStrings(String tableName, PartitionMetadata partitioning,
+                                                    List<LocalDate> periodStarts) {
+        if (periodStarts.isEmpty()) {
+            return Collections.emptyList();
         }
+        List<String> partitions = new ArrayList<>();
+        for (LocalDate start : periodStarts) {
+            String bound = "'" + partitioning.nextPeriod(start) + "'";
+            partitions.add("PARTITION " + partitioning.partitionSuffix(start) + " VALUES LESS THAN ("
+                + (isTimestampColumn(partitioning) ? "UNIX_TIMESTAMP(" + bound + ")" : bound) + ")");
+        }
+        partitions.add(getMaxValuePartition(partitioning));
+        return Collections.singletonList("ALTER TABLE " + tableName + " REORGANIZE PARTITION " + MAX_VALUE_PARTITION
+            + " INTO (" + String.join(", ", partitions) + ")");
+    }
+    
+    @Override
+    public String getPartitionName(String tableName, String suffix) {
+        return suffix; // partition names are local to their table
+    }
+    
+    @Override
+    public String getPartitionNamesQuery() {
+        // An unqualified name belongs to the current database
+        return "SELECT p.PARTITION_NAME FROM information_schema.PARTITIONS p JOIN (SELECT ? AS name) t "
+            + "ON CONCAT(p.TABLE_SCHEMA, '.', p.TABLE_NAME) "
+            + "= IF(LOCATE('.', t.name) > 0, t.name, CONCAT(DATABASE(), '.', t.name)) "
+            + "WHERE p.PARTITION_NAME IS NOT NULL";
+    }
+    
+    @Override
+    public String getDropPartitionString(String tableName, String partitionName) {
+        return "ALTER TABLE " + tableName + " DROP PARTITION " + partitionName;
+    }
+    
+    private String getRangeExpression(PartitionMetadata partitioning) {
+        // RANGE COLUMNS does not accept TIMESTAMP columns, their epoch seconds are partitioned instead
+        return isTimestampColumn(partitioning)
+            ? "RANGE (UNIX_TIMESTAMP(" + partitioning.getColumnName() + "))"
+            : "RANGE COLUMNS(" + partitioning.getColumnName() + ")";
+    }
+    
+    private String getMaxValuePartition(PartitionMetadata partitioning) {
+        return "PARTITION " + MAX_VALUE_PARTITION + " VALUES LESS THAN "
+            + (isTimestampColumn(partitioning) ? "MAXVALUE" : "(MAXVALUE)");
+    }
+    
+    private boolean isTimestampColumn(PartitionMetadata partitioning) {
+        return getColumnType(partitioning.getColumn()).toUpperCase(Locale.ROOT).startsWith("TIMESTAMP");
+    }
+    
+    @Override
+    protected boolean isRetryableError(SQLException e) {
+        // ER_LOCK_DEADLOCK, ER_LOCK_WAIT_TIMEOUT
+        return "40001".equals(e.getSQLState()) || e.getErrorCode() == 1213 || e.getErrorCode() == 1205;
+    }
+    
+    @Override
+    public String getSequenceNextValString(String sequenceName) {
+        throw new UnsupportedOperationException("MySQL does not support sequences");
+    }
+    
+    @Override
+    public String getIdentitySelectString() {
+        return "SELECT LAST_INSERT_ID()";
     }
     
     @Override
     public String quote(String identifier) {
         return "`" + identifier + "`";
     }
+    
+    @Override
+    public Map<String, String> getDefaultDataSourceProperties() {
+        Map<String, String> properties = super.getDefaultDataSourceProperties();
+        // Send a JDBC batch as multi-row statements instead of one round trip per row
+        properties.put("rewriteBatchedStatements", "true");
+        // Prepare statements on the server once per connection and keep them cached
+        properties.put("useServerPrepStmts", "true");
+        properties.put("cachePrepStmts", "true");
+        properties.put("prepStmtCacheSize", "250");
+        properties.put("prepStmtCacheSqlLimit", "2048");
+        // Stream rows in fetch-size chunks from a server cursor when a fetch size is set, as query publishers do
+        properties.put("useCursorFetch", "true");
+        // Skip the queries the driver would otherwise make to check settings it can track itself
+        properties.put("useLocalSessionState", "true");
+        properties.put("cacheServerConfiguration", "true");
+        properties.put("cacheResultSetMetadata", "true");
+        properties.put("elideSetAutoCommits", "true");
+        properties.put("maintainTimeStats", "false");
+        return properties;
+    }
 }
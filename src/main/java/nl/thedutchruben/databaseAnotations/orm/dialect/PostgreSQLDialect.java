@@ -1,12 +1,38 @@
 package nl.thedutchruben.databaseAnotations.orm.dialect;
 
+import nl.thedutchruben.databaseAnotations.orm.annotations.StorageOption;
 import nl.thedutchruben.databaseAnotations.orm.core.ColumnMetadata;
+import nl.thedutchruben.databaseAnotations.orm.core.EntityMetadata;
+import nl.thedutchruben.databaseAnotations.orm.core.PartitionMetadata;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * PostgreSQL database dialect.
  */
 public class PostgreSQLDialect extends Dialect {
     
+    public PostgreSQLDialect() {
+        registerType(byte[].class, getTypeMapping(byte[].class).withSqlType("BYTEA"));
+        registerType(OffsetDateTime.class, getTypeMapping(OffsetDateTime.class).withSqlType("TIMESTAMPTZ"));
+        registerType(Instant.class, getTypeMapping(Instant.class).withSqlType("TIMESTAMPTZ"));
+        registerType(Object.class, getTypeMapping(Object.class).withSqlType("TEXT"));
+    }
+    
+    @Override
+    protected String getDecimalType(ColumnMetadata column) {
+        if (column.getPrecision() > 0) {
+            return "NUMERIC(" + column.getPrecision() + "," + column.getScale() + ")";
+        }
+        return "NUMERIC";
+    }
+    
     @Override
     public String getLimitString(String sql, int limit) {
         return sql + " LIMIT " + limit;
@@ -19,7 +45,22 @@ public class PostgreSQLDialect extends Dialect {
     
     @Override
     public String getIdentityColumnString() {
-        return "SERIAL";
+        return ""; // the serial type creates the sequence and default
+    }
+    
+    @Override
+    public String getIdentityColumnType(String columnType) {
+        // Serial types also work on partitioned tables, identity columns only from PostgreSQL 17
+        switch (columnType) {
+            case "SMALLINT":
+                return "SMALLSERIAL";
+            case "INTEGER":
+                return "SERIAL";
+            case "BIGINT":
+                return "BIGSERIAL";
+            default:
+                return columnType;
+        }
     }
     
     @Override
@@ -27,6 +68,12 @@ public class PostgreSQLDialect extends Dialect {
         return true;
     }
     
+    @Override
+    protected boolean isRetryableError(SQLException e) {
+        // serialization_failure, deadlock_detected
+        return "40001".equals(e.getSQLState()) || "40P01".equals(e.getSQLState());
+    }
+    
     @Override
     public String getSequenceNextValString(String sequenceName) {
         return "SELECT nextval('" + sequenceName + "')";
@@ -38,42 +85,117 @@ public class PostgreSQLDialect extends Dialect {
     }
     
     @Override
-    public String getColumnType(ColumnMetadata columnMeta) {
-        Class<?> javaType = columnMeta.getJavaType();
-        
-        if (!columnMeta.getColumnDefinition().isEmpty()) {
-            return columnMeta.getColumnDefinition();
+    public boolean supportsPartialIndexes() {
+        return true;
+    }
+    
+    @Override
+    public boolean supportsIndexInclude() {
+        return true; // PostgreSQL 11+
+    }
+    
+    @Override
+    public String getCreateTableString(EntityMetadata metadata) {
+        if (metadata.getStorageOptions().contains(StorageOption.UNLOGGED)
+            && supportsStorageOption(StorageOption.UNLOGGED, metadata)) {
+            return "CREATE UNLOGGED TABLE";
         }
-        
-        if (javaType == String.class) {
-            return "VARCHAR(" + columnMeta.getLength() + ")";
-        } else if (javaType == Integer.class || javaType == int.class) {
-            if (columnMeta.isPrimaryKey()) {
-                return "SERIAL";
-            }
-            return "INTEGER";
-        } else if (javaType == Long.class || javaType == long.class) {
-            if (columnMeta.isPrimaryKey()) {
-                return "BIGSERIAL";
-            }
-            return "BIGINT";
-        } else if (javaType == Double.class || javaType == double.class) {
-            if (columnMeta.getPrecision() > 0) {
-                return "NUMERIC(" + columnMeta.getPrecision() + "," + columnMeta.getScale() + ")";
-            }
-            return "DOUBLE PRECISION";
-        } else if (javaType == Float.class || javaType == float.class) {
-            return "REAL";
-        } else if (javaType == Boolean.class || javaType == boolean.class) {
-            return "BOOLEAN";
-        } else if (javaType == java.sql.Date.class) {
-            return "DATE";
-        } else if (javaType == java.sql.Time.class) {
-            return "TIME";
-        } else if (javaType == java.sql.Timestamp.class || javaType == java.util.Date.class) {
-            return "TIMESTAMP";
-        } else {
-            return "TEXT";
+        return getCreateTableString();
+    }
+    
+    @Override
+    public boolean supportsStorageOption(StorageOption option) {
+        return option == StorageOption.UNLOGGED;
+    }
+    
+    @Override
+    public boolean supportsStorageOption(StorageOption option, EntityMetadata metadata) {
+        // Partitioned tables cannot be unlogged before PostgreSQL 17
+        return supportsStorageOption(option) && metadata.getPartitioning() == null;
+    }
+    
+    @Override
+    public boolean supportsPartitioning() {
+        return true;
+    }
+    
+    @Override
+    public boolean supportsPartitionedForeignKeys() {
+        return true;
+    }
+    
+    @Override
+    public String getPartitionByString(PartitionMetadata partitioning) {
+        return "PARTITION BY " + partitioning.getStrategy() + " (" + partitioning.getColumnName() + ")";
+    }
+    
+    @Override
+    public List<String> getCreatePartitionStrings(String tableName, PartitionMetadata partitioning) {
+        List<String> statements = new ArrayList<>();
+        switch (partitioning.getStrategy()) {
+            case LIST:
+                for (String value : partitioning.getValues()) {
+                    statements.add("CREATE TABLE IF NOT EXISTS " + getPartitionName(tableName, getListPartitionSuffix(value))
+                        + " PARTITION OF " + tableName + " FOR VALUES IN (" + getPartitionValueLiteral(partitioning, value) + ")");
+                }
+                break;
+            case HASH:
+                for (int i = 0; i < partitioning.getPartitions(); i++) {
+                    statements.add("CREATE TABLE IF NOT EXISTS " + getPartitionName(tableName, "h" + i)
+                        + " PARTITION OF " + tableName
+                        + " FOR VALUES WITH (MODULUS " + partitioning.getPartitions() + ", REMAINDER " + i + ")");
+                }
+                return statements;
+            default:
+                // No default partition: creating a range partition would have to scan it under an
+                // exclusive lock, and fails once it holds rows of the new range
+                return statements;
+        }
+        // Rows outside the declared values land here instead of failing the insert
+        statements.add("CREATE TABLE IF NOT EXISTS " + getPartitionName(tableName, "default")
+            + " PARTITION OF " + tableName + " DEFAULT");
+        return statements;
+    }
+    
+    @Override
+    public List<String> getAddRangePartitionStrings(String tableName, PartitionMetadata partitioning,
+                                                    List<LocalDate> periodStarts) {
+        List<String> statements = new ArrayList<>();
+        for (LocalDate start : periodStarts) {
+            statements.add("CREATE TABLE IF NOT EXISTS " + getPartitionName(tableName, partitioning.partitionSuffix(start))
+                + " PARTITION OF " + tableName
+                + " FOR VALUES FROM ('" + start + "') TO ('" + partitioning.nextPeriod(start) + "')");
         }
+        return statements;
+    }
+    
+    @Override
+    public String getPartitionNamesQuery() {
+        // Resolves the name like the DDL did, with the search path and case folding; null if there is no such table
+        return "SELECT c.relname FROM pg_inherits i "
+            + "JOIN pg_class c ON c.oid = i.inhrelid "
+            + "WHERE i.inhparent = to_regclass(?)";
+    }
+    
+    @Override
+    public String getDetachPartitionString(String tableName, String partitionName) {
+        return "ALTER TABLE " + tableName + " DETACH PARTITION " + partitionName;
+    }
+    
+    @Override
+    public String getDropPartitionString(String tableName, String partitionName) {
+        return "DROP TABLE " + partitionName;
+    }
+    
+    @Override
+    public Map<String, String> getDefaultDataSourceProperties() {
+        Map<String, String> properties = super.getDefaultDataSourceProperties();
+        // Send a batch of inserts as multi-row inserts instead of one statement per row
+        properties.put("reWriteBatchedInserts", "true");
+        // Switch to a named server-side statement from the third execution
+        properties.put("prepareThreshold", "3");
+        properties.put("preparedStatementCacheQueries", "512");
+        properties.put("preparedStatementCacheSizeMiB", "10");
+        return properties;
     }
 }
@@ -1,12 +1,94 @@
 package nl.thedutchruben.databaseAnotations.orm.dialect;
 
-import nl.thedutchruben.databaseAnotations.orm.core.ColumnMetadata;
+import nl.thedutchruben.databaseAnotations.orm.annotations.StorageOption;
+import nl.thedutchruben.databaseAnotations.orm.core.EntityMetadata;
+import nl.thedutchruben.databaseAnotations.orm.exception.MappingException;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
 
 /**
  * SQLite database dialect.
  */
 public class SQLiteDialect extends Dialect {
     
+    public SQLiteDialect() {
+        // Use the storage classes SQLite has, which are also the only types STRICT tables accept
+        for (Class<?> type : new Class<?>[] {Integer.class, Long.class, Short.class, Byte.class, Boolean.class}) {
+            registerType(type, getTypeMapping(type).withSqlType("INTEGER"));
+        }
+        registerType(Double.class, getTypeMapping(Double.class).withSqlType("REAL"));
+        registerType(String.class, getTypeMapping(String.class).withSqlType("TEXT"));
+        registerType(byte[].class, getTypeMapping(byte[].class).withSqlType("BLOB"));
+        registerType(UUID.class, uuidAsBytes("BLOB"));
+        registerType(Object.class, getTypeMapping(Object.class).withSqlType("TEXT"));
+        
+        // NUMERIC affinity would turn decimals into doubles, text keeps them exact
+        registerType(BigDecimal.class, new TypeMapping("TEXT", Types.VARCHAR,
+            (stmt, i, v) -> stmt.setString(i, ((BigDecimal) v).toPlainString()), (rs, i) -> {
+                String value = rs.getString(i);
+                return value != null ? new BigDecimal(value) : null;
+            }));
+        
+        // Dates are epoch numbers so they compare and index as integers: days for dates, microseconds for
+        // the types other databases keep to the microsecond, milliseconds for the legacy types that only have those
+        registerType(LocalDate.class, epoch(Types.DATE,
+            v -> ((LocalDate) v).toEpochDay(), LocalDate::ofEpochDay));
+        registerType(LocalTime.class, epoch(Types.TIME,
+            v -> ((LocalTime) v).toNanoOfDay() / 1_000, us -> LocalTime.ofNanoOfDay(us * 1_000)));
+        registerType(LocalDateTime.class, epoch(Types.TIMESTAMP,
+            v -> toEpochMicros(((LocalDateTime) v).toInstant(ZoneOffset.UTC)),
+            us -> LocalDateTime.ofInstant(fromEpochMicros(us), ZoneOffset.UTC)));
+        registerType(Instant.class, epoch(Types.TIMESTAMP,
+            v -> toEpochMicros((Instant) v), SQLiteDialect::fromEpochMicros));
+        registerType(OffsetDateTime.class, epoch(Types.TIMESTAMP,
+            v -> toEpochMicros(((OffsetDateTime) v).toInstant()),
+            us -> fromEpochMicros(us).atOffset(ZoneOffset.UTC)));
+        registerType(Timestamp.class, epoch(Types.TIMESTAMP,
+            v -> toEpochMicros(((Timestamp) v).toInstant()), us -> Timestamp.from(fromEpochMicros(us))));
+        registerType(java.sql.Date.class, epoch(Types.DATE,
+            v -> ((java.util.Date) v).getTime(), java.sql.Date::new));
+        registerType(java.sql.Time.class, epoch(Types.TIME,
+            v -> ((java.util.Date) v).getTime(), java.sql.Time::new));
+        registerType(java.util.Date.class, epoch(Types.TIMESTAMP,
+            v -> ((java.util.Date) v).getTime(), java.util.Date::new));
+    }
+    
+    private static long toEpochMicros(Instant instant) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, instant);
+    }
+    
+    private static Instant fromEpochMicros(long micros) {
+        return Instant.EPOCH.plus(micros, ChronoUnit.MICROS);
+    }
+    
+    private static TypeMapping epoch(int jdbcType, ToLongFunction<Object> toEpoch, LongFunction<Object> fromEpoch) {
+        return new TypeMapping("INTEGER", jdbcType, (stmt, i, v) -> stmt.setLong(i, toEpoch.applyAsLong(v)), (rs, i) -> {
+            long value = rs.getLong(i);
+            return rs.wasNull() ? null : fromEpoch.apply(value);
+        });
+    }
+    
+    @Override
+    protected String getEnumColumnType(int constants) {
+        return "INTEGER";
+    }
+    
     @Override
     public String getLimitString(String sql, int limit) {
         return sql + " LIMIT " + limit;
@@ -19,7 +101,13 @@ public class SQLiteDialect extends Dialect {
     
     @Override
     public String getIdentityColumnString() {
-        return "AUTOINCREMENT";
+        // AUTOINCREMENT is only valid on a column declared INTEGER PRIMARY KEY
+        return "PRIMARY KEY AUTOINCREMENT";
+    }
+    
+    @Override
+    public boolean isIdentityColumnPrimaryKey() {
+        return true;
     }
     
     @Override
@@ -27,6 +115,28 @@ public class SQLiteDialect extends Dialect {
         return false;
     }
     
+    @Override
+    public boolean supportsSkipLocked() {
+        return false;
+    }
+    
+    @Override
+    public boolean supportsNoWait() {
+        return false;
+    }
+    
+    @Override
+    public String getForUpdateString(boolean skipLocked, boolean noWait) {
+        return ""; // writers lock the whole database, there are no row locks
+    }
+    
+    @Override
+    protected boolean isRetryableError(SQLException e) {
+        // SQLITE_BUSY and SQLITE_LOCKED, including their extended result codes
+        int primaryCode = e.getErrorCode() & 0xFF;
+        return primaryCode == 5 || primaryCode == 6;
+    }
+    
     @Override
     public String getSequenceNextValString(String sequenceName) {
         throw new UnsupportedOperationException("SQLite does not support sequences");
@@ -38,36 +148,75 @@ public class SQLiteDialect extends Dialect {
     }
     
     @Override
-    public String getColumnType(ColumnMetadata columnMeta) {
-        Class<?> javaType = columnMeta.getJavaType();
-        
-        if (!columnMeta.getColumnDefinition().isEmpty()) {
-            return columnMeta.getColumnDefinition();
+    public boolean supportsBatchGeneratedKeys() {
+        return false; // the driver only reports last_insert_rowid() for the whole batch
+    }
+    
+    @Override
+    public boolean supportsPartialIndexes() {
+        return true;
+    }
+    
+    @Override
+    public String getTableOptionsString(EntityMetadata metadata) {
+        List<String> options = new ArrayList<>();
+        if (metadata.getStorageOptions().contains(StorageOption.WITHOUT_ROWID)) {
+            if (metadata.getPrimaryKey() == null || metadata.getPrimaryKey().getGenerationType() != null) {
+                // Generated ids come from the rowid, and a WITHOUT ROWID table has none
+                throw MappingException.invalidAnnotation(metadata.getEntityClass(), "storage",
+                    "WITHOUT ROWID needs a primary key that is not generated");
+            }
+            options.add("WITHOUT ROWID");
         }
-        
-        // SQLite has dynamic typing, but we'll use affinity types
-        if (javaType == String.class) {
-            return "TEXT";
-        } else if (javaType == Integer.class || javaType == int.class ||
-                   javaType == Long.class || javaType == long.class) {
-            return "INTEGER";
-        } else if (javaType == Double.class || javaType == double.class ||
-                   javaType == Float.class || javaType == float.class) {
-            return "REAL";
-        } else if (javaType == Boolean.class || javaType == boolean.class) {
-            return "INTEGER"; // SQLite doesn't have boolean, use integer
-        } else if (javaType == java.sql.Date.class ||
-                   javaType == java.sql.Time.class ||
-                   javaType == java.sql.Timestamp.class ||
-                   javaType == java.util.Date.class) {
-            return "TEXT"; // SQLite stores dates as text or integer
-        } else {
-            return "TEXT";
+        if (metadata.getStorageOptions().contains(StorageOption.STRICT)) {
+            options.add("STRICT");
         }
+        return String.join(", ", options);
+    }
+    
+    @Override
+    public boolean supportsStorageOption(StorageOption option) {
+        return option == StorageOption.WITHOUT_ROWID || option == StorageOption.STRICT;
+    }
+    
+    @Override
+    public boolean supportsAddForeignKey() {
+        return false; // references are only resolved when rows are written, so forward references work inline
+    }
+    
+    @Override
+    public boolean supportsParallelDdl() {
+        return false; // schema changes take the single database write lock
     }
     
     @Override
     public String getDropTableString() {
         return "DROP TABLE IF EXISTS";
     }
+    
+    /**
+     * Gets the pragmas applied to every pooled connection when it is opened, keyed by pragma name;
+     * the driver reads them from the connection properties. WAL lets readers run next to the
+     * single writer, and in WAL mode {@code synchronous=NORMAL} only syncs on checkpoints
+     * without risking corruption.
+     */
+    @Override
+    public Map<String, String> getDefaultDataSourceProperties() {
+        Map<String, String> pragmas = super.getDefaultDataSourceProperties();
+        pragmas.put("journal_mode", "WAL");
+        pragmas.put("synchronous", "NORMAL");
+        pragmas.put("busy_timeout", "5000");
+        pragmas.put("cache_size", "-65536"); // negative sizes are in KiB, so 64 MiB
+        pragmas.put("mmap_size", "268435456");
+        pragmas.put("temp_store", "MEMORY");
+        return pragmas;
+    }
+    
+    /**
+     * Checks whether the URL opens an in-memory database, which each connection sees on its own.
+     */
+    public static boolean isInMemory(String url) {
+        String path = url.substring("jdbc:sqlite:".length());
+        return path.isEmpty() || path.contains(":memory:") || path.contains("mode=memory");
+    }
 }
@@ -0,0 +1,88 @@
+package nl.thedutchruben.databaseAnotations.orm.dialect;
+
+import nl.thedutchruben.databaseAnotations.orm.core.ColumnMetadata;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.Function;
+
+/**
+ * How a dialect stores one Java type: the column type generated for it, and how its values
+ * are bound to statements and read from result sets. Values go through the typed JDBC
+ * accessors, so the driver never has to guess a type and no value is converted on the way.
+ */
+public final class TypeMapping {
+    
+    /**
+     * Binds a non-null value to a statement parameter.
+     */
+    @FunctionalInterface
+    public interface Binder {
+        void bind(PreparedStatement stmt, int index, Object value) throws SQLException;
+    }
+    
+    /**
+     * Reads a column of the current row, returning null for SQL NULL.
+     */
+    @FunctionalInterface
+    public interface Reader {
+        Object read(ResultSet rs, int index) throws SQLException;
+    }
+    
+    private final Function<ColumnMetadata, String> sqlType;
+    private final int jdbcType;
+    private final Binder binder;
+    private final Reader reader;
+    
+    public TypeMapping(String sqlType, int jdbcType, Binder binder, Reader reader) {
+        this(column -> sqlType, jdbcType, binder, reader);
+    }
+    
+    public TypeMapping(Function<ColumnMetadata, String> sqlType, int jdbcType, Binder binder, Reader reader) {
+        this.sqlType = sqlType;
+        this.jdbcType = jdbcType;
+        this.binder = binder;
+        this.reader = reader;
+    }
+    
+    /**
+     * Gets a mapping that binds and reads values the same way but generates another column type.
+     */
+    public TypeMapping withSqlType(String sqlType) {
+        return new TypeMapping(sqlType, jdbcType, binder, reader);
+    }
+    
+    /**
+     * Gets a mapping that binds and reads values the same way but generates another column type.
+     */
+    public TypeMapping withSqlType(Function<ColumnMetadata, String> sqlType) {
+        return new TypeMapping(sqlType, jdbcType, binder, reader);
+    }
+    
+    /**
+     * Gets the column type for a column of this type.
+     */
+    public String getSqlType(ColumnMetadata column) {
+        return sqlType.apply(column);
+    }
+    
+    /**
+     * Gets the {@link java.sql.Types} code used to bind null values.
+     */
+    public int getJdbcType() {
+        return jdbcType;
+    }
+    
+    public void bind(PreparedStatement stmt, int index, Object value) throws SQLException {
+        if (value == null) {
+            stmt.setNull(index, jdbcType);
+        } else {
+            binder.bind(stmt, index, value);
+        }
+    }
+    
+    public Object read(ResultSet rs, int index) throws SQLException {
+        return reader.read(rs, index);
+    }
+}
@@ -1,5 +1,7 @@
 package nl.thedutchruben.databaseAnotations.orm.exception;
 
+import java.util.List;
+
 /**
  * Thrown when there are issues with entity mapping or configuration.
  */
@@ -24,4 +26,14 @@ public class MappingException extends ORMException {
     public static MappingException invalidAnnotation(Class<?> entityClass, String field, String reason) {
         return new MappingException("Invalid annotation on " + entityClass.getName() + "." + field + ": " + reason);
     }
+    
+    public static MappingException statementsInvalid(List<String> problems) {
+        return new MappingException("Entity statements do not match the database schema:\n  "
+            + String.join("\n  ", problems));
+    }
+    
+    public static MappingException schemaInvalid(List<String> problems) {
+        return new MappingException("Database schema does not match the entity mappings:\n  "
+            + String.join("\n  ", problems));
+    }
 }
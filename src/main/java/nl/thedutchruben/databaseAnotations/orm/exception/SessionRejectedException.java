@@ -0,0 +1,28 @@
+package nl.thedutchruben.databaseAnotations.orm.exception;
+
+/**
+ * Thrown when the session bulkhead does not admit a new session,
+ * because too many callers are already waiting or the wait budget ran out.
+ */
+public class SessionRejectedException extends ORMException {
+    
+    public SessionRejectedException(String message) {
+        super(message);
+    }
+    
+    public SessionRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+    
+    public static SessionRejectedException queueFull(int maxQueue) {
+        return new SessionRejectedException("Session rejected: " + maxQueue + " callers are already waiting");
+    }
+    
+    public static SessionRejectedException timedOut(long waitMillis) {
+        return new SessionRejectedException("Session rejected: no session became available within " + waitMillis + " ms");
+    }
+    
+    public static SessionRejectedException interrupted(InterruptedException cause) {
+        return new SessionRejectedException("Interrupted while waiting for a session", cause);
+    }
+}
@@ -2,6 +2,8 @@ package nl.thedutchruben.databaseAnotations.orm.query;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
 
 /**
  * Interface for executing queries built by QueryBuilder.
@@ -13,6 +15,17 @@ public interface Query<T> {
      */
     List<T> getResultList();
     
+    /**
+     * Executes the query and publishes the results as they are read from the cursor,
+     * honoring subscriber demand and cancellation.
+     */
+    Flow.Publisher<T> getResultPublisher();
+    
+    /**
+     * Same as {@link #getResultPublisher()}, reading rows on the given executor.
+     */
+    Flow.Publisher<T> getResultPublisher(Executor executor);
+    
     /**
      * Executes the query and returns a single result.
      * @throws RuntimeException if more than one result is found
@@ -1,6 +1,9 @@
 package nl.thedutchruben.databaseAnotations.orm.query;
 
+import nl.thedutchruben.databaseAnotations.orm.core.ColumnMetadata;
 import nl.thedutchruben.databaseAnotations.orm.core.EntityMetadata;
+import nl.thedutchruben.databaseAnotations.orm.core.RelationshipMetadata;
+import nl.thedutchruben.databaseAnotations.orm.core.RelationshipType;
 import nl.thedutchruben.databaseAnotations.orm.dialect.Dialect;
 
 import java.util.ArrayList;
@@ -21,11 +24,15 @@ public class QueryBuilder<T> {
     private final List<String> whereConditions = new ArrayList<>();
     private final List<String> orderByColumns = new ArrayList<>();
     private final Map<String, Object> parameters = new HashMap<>();
+    private final List<Object> conditionValues = new ArrayList<>();
     
     private String alias;
     private Integer limitValue;
     private Integer offsetValue;
     private boolean distinct = false;
+    private boolean forUpdate = false;
+    private boolean skipLocked = false;
+    private boolean noWait = false;
     
     public QueryBuilder(Class<T> entityClass, EntityMetadata metadata, Dialect dialect) {
         this.entityClass = entityClass;
@@ -74,6 +81,7 @@ public class QueryBuilder<T> {
         whereConditions.add(condition);
         String paramName = "param" + parameters.size();
         parameters.put(paramName, value);
+        conditionValues.add(value);
         return this;
     }
     
@@ -133,6 +141,40 @@ public class QueryBuilder<T> {
         return this;
     }
     
+    /**
+     * Locks the selected rows until the end of the transaction (SELECT ... FOR UPDATE).
+     */
+    public QueryBuilder<T> forUpdate() {
+        this.forUpdate = true;
+        return this;
+    }
+    
+    /**
+     * Locks the selected rows and skips rows locked by other transactions, so concurrent
+     * workers each claim different rows. Falls back to {@link #forUpdate()} on dialects
+     * without SKIP LOCKED.
+     */
+    public QueryBuilder<T> skipLocked() {
+        if (noWait) {
+            throw new IllegalStateException("SKIP LOCKED cannot be combined with NOWAIT");
+        }
+        this.forUpdate = true;
+        this.skipLocked = true;
+        return this;
+    }
+    
+    /**
+     * Locks the selected rows and fails immediately instead of waiting when a row is locked.
+     */
+    public QueryBuilder<T> noWait() {
+        if (skipLocked) {
+            throw new IllegalStateException("NOWAIT cannot be combined with SKIP LOCKED");
+        }
+        this.forUpdate = true;
+        this.noWait = true;
+        return this;
+    }
+    
     /**
      * Sets a named parameter value.
      */
@@ -145,6 +187,13 @@ public class QueryBuilder<T> {
      * Builds the final SQL query string.
      */
     public String buildQuery() {
+        return buildQuery(limitValue, offsetValue);
+    }
+    
+    /**
+     * Builds the SQL query string with the given LIMIT and OFFSET instead of the configured ones.
+     */
+    public String buildQuery(Integer limit, Integer offset) {
         StringBuilder sql = new StringBuilder();
         
         // SELECT clause
@@ -154,9 +203,21 @@ public class QueryBuilder<T> {
         }
         
         if (selectColumns.isEmpty()) {
-            // Select all columns
+            // Select all mapped columns, including ManyToOne foreign keys
+            List<String> columnNames = new ArrayList<>();
+            for (ColumnMetadata column : metadata.getColumns().values()) {
+                columnNames.add(column.getColumnName());
+            }
+            for (RelationshipMetadata relationship : metadata.getRelationships().values()) {
+                String joinColumn = relationship.getJoinColumn();
+                if (relationship.getRelationshipType() == RelationshipType.MANY_TO_ONE
+                        && joinColumn != null && !joinColumn.isEmpty()) {
+                    columnNames.add(joinColumn);
+                }
+            }
+            
             boolean first = true;
-            for (String columnName : metadata.getColumns().keySet()) {
+            for (String columnName : columnNames) {
                 if (!first) sql.append(", ");
                 if (alias != null) {
                     sql.append(alias).append(".");
@@ -186,14 +247,19 @@ public class QueryBuilder<T> {
         
         // LIMIT and OFFSET
         String finalSql = sql.toString();
-        if (limitValue != null) {
-            if (offsetValue != null) {
-                finalSql = dialect.getLimitString(finalSql, offsetValue, limitValue);
+        if (limit != null) {
+            if (offset != null) {
+                finalSql = dialect.getLimitString(finalSql, offset, limit);
             } else {
-                finalSql = dialect.getLimitString(finalSql, limitValue);
+                finalSql = dialect.getLimitString(finalSql, limit);
             }
         }
         
+        // Row locking
+        if (forUpdate) {
+            finalSql += dialect.getForUpdateString(skipLocked, noWait);
+        }
+        
         return finalSql;
     }
     
@@ -204,6 +270,42 @@ public class QueryBuilder<T> {
         return new HashMap<>(parameters);
     }
     
+    /**
+     * Gets the values of conditions added with {@link #where(String, Object)}, in the
+     * order of their placeholders.
+     */
+    public List<Object> getConditionValues() {
+        return new ArrayList<>(conditionValues);
+    }
+    
+    /**
+     * Gets the ORDER BY entries, each a column followed by ASC or DESC.
+     */
+    public List<String> getOrderBy() {
+        return new ArrayList<>(orderByColumns);
+    }
+    
+    /**
+     * Gets the LIMIT, or null when not set.
+     */
+    public Integer getLimit() {
+        return limitValue;
+    }
+    
+    /**
+     * Gets the OFFSET, or null when not set.
+     */
+    public Integer getOffset() {
+        return offsetValue;
+    }
+    
+    /**
+     * Gets the metadata of the queried entity.
+     */
+    public EntityMetadata getMetadata() {
+        return metadata;
+    }
+    
     /**
      * Gets the entity class this query is for.
      */
@@ -5,10 +5,13 @@ import nl.thedutchruben.databaseAnotations.orm.session.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
 
 /**
  * Implementation of Query interface for executing SQL queries.
@@ -36,16 +39,30 @@ public class QueryImpl<T> implements Query<T> {
     @Override
     public List<T> getResultList() {
         try {
-            String finalSql = applyLimits(sql);
+            List<Object> values = new ArrayList<>();
+            String finalSql = applyLimits(bindParameters(sql, values));
             logger.debug("Executing query: {}", finalSql);
             
-            return session.createQuery(finalSql, resultClass);
+            return session.createQuery(finalSql, resultClass, values.toArray());
             
         } catch (Exception e) {
             throw new RuntimeException("Failed to execute query", e);
         }
     }
     
+    @Override
+    public Flow.Publisher<T> getResultPublisher() {
+        return getResultPublisher(null);
+    }
+    
+    @Override
+    public Flow.Publisher<T> getResultPublisher(Executor executor) {
+        List<Object> values = new ArrayList<>();
+        String finalSql = applyLimits(bindParameters(sql, values));
+        logger.debug("Publishing query: {}", finalSql);
+        return session.createQueryPublisher(finalSql, resultClass, executor, values.toArray());
+    }
+    
     @Override
     public T getSingleResult() {
         List<T> results = getResultList();
@@ -99,16 +116,47 @@ public class QueryImpl<T> implements Query<T> {
         return sql;
     }
     
+    /**
+     * Replaces the named parameters with {@code ?} placeholders, collecting their values in order
+     * so the dialect binds them the same way it stores entity fields. Quoted text and
+     * PostgreSQL {@code ::} casts are left alone.
+     */
+    private String bindParameters(String sql, List<Object> values) {
+        StringBuilder result = new StringBuilder(sql.length());
+        int i = 0;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                int end = sql.indexOf(c, i + 1);
+                end = end < 0 ? sql.length() : end + 1;
+                result.append(sql, i, end);
+                i = end;
+            } else if (c == ':' && i + 1 < sql.length() && sql.charAt(i + 1) == ':') {
+                result.append("::");
+                i += 2;
+            } else if (c == ':' && i + 1 < sql.length() && Character.isJavaIdentifierStart(sql.charAt(i + 1))) {
+                int end = i + 1;
+                while (end < sql.length() && Character.isJavaIdentifierPart(sql.charAt(end))) {
+                    end++;
+                }
+                String name = sql.substring(i + 1, end);
+                if (!parameters.containsKey(name)) {
+                    throw new IllegalArgumentException("No value set for parameter: " + name);
+                }
+                values.add(parameters.get(name));
+                result.append('?');
+                i = end;
+            } else {
+                result.append(c);
+                i++;
+            }
+        }
+        return result.toString();
+    }
+    
     private String applyLimits(String sql) {
         String finalSql = sql;
         
-        // Replace named parameters
-        for (Map.Entry<String, Object> param : parameters.entrySet()) {
-            String placeholder = ":" + param.getKey();
-            String value = formatParameterValue(param.getValue());
-            finalSql = finalSql.replace(placeholder, value);
-        }
-        
         // Apply LIMIT and OFFSET if specified
         if (maxResults != null) {
             if (firstResult != null) {
@@ -120,16 +168,4 @@ public class QueryImpl<T> implements Query<T> {
         
         return finalSql;
     }
-    
-    private String formatParameterValue(Object value) {
-        if (value == null) {
-            return "NULL";
-        } else if (value instanceof String) {
-            return "'" + value.toString().replace("'", "''") + "'";
-        } else if (value instanceof Number || value instanceof Boolean) {
-            return value.toString();
-        } else {
-            return "'" + value.toString() + "'";
-        }
-    }
 }
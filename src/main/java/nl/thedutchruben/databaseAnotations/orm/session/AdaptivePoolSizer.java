@@ -0,0 +1,196 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import nl.thedutchruben.databaseAnotations.orm.core.PoolMetrics;
+import nl.thedutchruben.databaseAnotations.orm.util.ExecutorUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Resizes the main connection pool between configured bounds.
+ * Every interval it compares the acquisition wait time, acquisition timeouts and
+ * waiting threads reported by HikariCP with the target wait: when callers wait,
+ * the pool grows by a quarter; when the pool stayed more than half idle, it shrinks
+ * by one connection. Every resize is logged and kept in {@link #getDecisions()}.
+ */
+public class AdaptivePoolSizer implements AutoCloseable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AdaptivePoolSizer.class);
+    
+    /**
+     * Number of past decisions kept for {@link #getDecisions()}.
+     */
+    static final int MAX_DECISIONS = 100;
+    
+    private final HikariDataSource dataSource;
+    private final PoolMetrics metrics;
+    private final int minSize;
+    private final int maxSize;
+    private final long intervalMillis;
+    private final double targetWaitMs;
+    private final int configuredMinimumIdle;
+    private final Deque<Decision> decisions = new ArrayDeque<>();
+    private ScheduledExecutorService scheduler;
+    private volatile IntConsumer resizeListener;
+    
+    AdaptivePoolSizer(HikariDataSource dataSource, PoolMetrics metrics, int minSize, int maxSize,
+                      long intervalMillis, long targetWaitMillis) {
+        if (minSize <= 0 || maxSize < minSize) {
+            throw new IllegalArgumentException("Invalid adaptive pool bounds: " + minSize + ".." + maxSize);
+        }
+        this.dataSource = dataSource;
+        this.metrics = metrics;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.intervalMillis = intervalMillis;
+        this.targetWaitMs = targetWaitMillis;
+        this.configuredMinimumIdle = dataSource.getMinimumIdle();
+    }
+    
+    /**
+     * Sets a callback invoked with the new maximum pool size after every resize.
+     */
+    void setResizeListener(IntConsumer resizeListener) {
+        this.resizeListener = resizeListener;
+    }
+    
+    /**
+     * Moves the pool into the configured bounds and starts the periodic check.
+     */
+    void start() {
+        int current = dataSource.getHikariConfigMXBean().getMaximumPoolSize();
+        int bounded = Math.max(minSize, Math.min(maxSize, current));
+        if (bounded != current) {
+            resize(current, bounded, "configured size outside adaptive bounds", metrics.takeSample(), 0);
+        }
+        scheduler = ExecutorUtils.newDaemonScheduler("orm-pool-sizer");
+        scheduler.scheduleWithFixedDelay(this::adjust, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Runs one sizing check; called by the scheduler.
+     */
+    void adjust() {
+        try {
+            HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+            if (pool == null) {
+                return;
+            }
+            PoolMetrics.Sample sample = metrics.takeSample();
+            int current = dataSource.getHikariConfigMXBean().getMaximumPoolSize();
+            int waiting = pool.getThreadsAwaitingConnection();
+            int peakInUse = Math.max(sample.peakInUse, pool.getActiveConnections());
+            
+            if (current < maxSize && (sample.timeouts > 0 || waiting > 0 || sample.averageAcquireTimeMs > targetWaitMs)) {
+                String reason = sample.timeouts > 0 ? sample.timeouts + " acquisition timeouts"
+                    : waiting > 0 ? waiting + " threads waiting for a connection"
+                    : "average acquisition wait above " + (long) targetWaitMs + " ms";
+                resize(current, Math.min(maxSize, current + Math.max(1, current / 4)), reason, sample, waiting);
+            } else if (current > minSize && waiting == 0 && sample.timeouts == 0
+                    && sample.averageAcquireTimeMs < targetWaitMs / 4 && peakInUse < current / 2) {
+                resize(current, current - 1, "peak usage " + peakInUse + " below half the pool", sample, waiting);
+            }
+        } catch (RuntimeException e) {
+            // An exception would cancel the scheduled task
+            logger.warn("Adaptive pool sizing failed", e);
+        }
+    }
+    
+    private void resize(int current, int target, String reason, PoolMetrics.Sample sample, int waiting) {
+        HikariConfigMXBean config = dataSource.getHikariConfigMXBean();
+        // Minimum idle may never exceed the maximum; put the configured value back when growing
+        int minimumIdle = Math.min(configuredMinimumIdle, target);
+        if (target < current) {
+            config.setMinimumIdle(minimumIdle);
+            config.setMaximumPoolSize(target);
+        } else {
+            config.setMaximumPoolSize(target);
+            config.setMinimumIdle(minimumIdle);
+        }
+        
+        Decision decision = new Decision(System.currentTimeMillis(), current, target, reason,
+            sample.averageAcquireTimeMs, sample.peakInUse, waiting);
+        synchronized (decisions) {
+            if (decisions.size() == MAX_DECISIONS) {
+                decisions.removeFirst();
+            }
+            decisions.addLast(decision);
+        }
+        logger.info("Resized connection pool from {} to {}: {}", current, target, reason);
+        IntConsumer listener = resizeListener;
+        if (listener != null) {
+            listener.accept(target);
+        }
+    }
+    
+    /**
+     * Gets the most recent resize decisions, oldest first.
+     */
+    public List<Decision> getDecisions() {
+        synchronized (decisions) {
+            return new ArrayList<>(decisions);
+        }
+    }
+    
+    public int getMinSize() {
+        return minSize;
+    }
+    
+    public int getMaxSize() {
+        return maxSize;
+    }
+    
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+    
+    /**
+     * A pool resize and the measurements that caused it.
+     */
+    public static class Decision {
+        private final long timestamp;
+        private final int previousSize;
+        private final int newSize;
+        private final String reason;
+        private final double averageAcquireTimeMs;
+        private final int peakInUse;
+        private final int threadsWaiting;
+        
+        Decision(long timestamp, int previousSize, int newSize, String reason,
+                 double averageAcquireTimeMs, int peakInUse, int threadsWaiting) {
+            this.timestamp = timestamp;
+            this.previousSize = previousSize;
+            this.newSize = newSize;
+            this.reason = reason;
+            this.averageAcquireTimeMs = averageAcquireTimeMs;
+            this.peakInUse = peakInUse;
+            this.threadsWaiting = threadsWaiting;
+        }
+        
+        public long getTimestamp() { return timestamp; }
+        public int getPreviousSize() { return previousSize; }
+        public int getNewSize() { return newSize; }
+        public String getReason() { return reason; }
+        public double getAverageAcquireTimeMs() { return averageAcquireTimeMs; }
+        public int getPeakInUse() { return peakInUse; }
+        public int getThreadsWaiting() { return threadsWaiting; }
+        
+        @Override
+        public String toString() {
+            return "Decision{" + previousSize + " -> " + newSize + ": " + reason + "}";
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Non-blocking facade over sessions.
+ * Every operation runs on its own short-lived session on the configured executor,
+ * so independent operations can be fanned out and run concurrently. The number of
+ * operations holding a connection at the same time never exceeds the pool size.
+ */
+public interface AsyncSession extends AutoCloseable {
+    
+    /**
+     * Finds an entity by its primary key.
+     */
+    <T> CompletableFuture<T> findById(Class<T> entityClass, Object id);
+    
+    /**
+     * Finds all entities of a given type.
+     */
+    <T> CompletableFuture<List<T>> findAll(Class<T> entityClass);
+    
+    /**
+     * Saves an entity to the database.
+     */
+    <T> CompletableFuture<T> save(T entity);
+    
+    /**
+     * Executes a custom SQL query and returns the result list.
+     */
+    <T> CompletableFuture<List<T>> createQuery(String sql, Class<T> resultClass);
+    
+    /**
+     * Runs arbitrary work against a dedicated session.
+     */
+    <R> CompletableFuture<R> execute(Function<Session, R> work);
+    
+    /**
+     * Checks if the session is open.
+     */
+    boolean isOpen();
+    
+    /**
+     * Closes the session. Operations already submitted still complete.
+     */
+    @Override
+    void close();
+}
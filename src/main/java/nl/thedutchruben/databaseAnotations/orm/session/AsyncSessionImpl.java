@@ -0,0 +1,81 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * Default implementation of the AsyncSession interface.
+ */
+public class AsyncSessionImpl implements AsyncSession {
+    
+    private final SessionFactory sessionFactory;
+    private final Executor executor;
+    private final Semaphore connectionPermits;
+    private volatile boolean open = true;
+    
+    /**
+     * @param connectionPermits shared limit on operations holding a connection at the same time
+     */
+    public AsyncSessionImpl(SessionFactory sessionFactory, Executor executor, Semaphore connectionPermits) {
+        this.sessionFactory = sessionFactory;
+        this.executor = executor;
+        this.connectionPermits = connectionPermits;
+    }
+    
+    @Override
+    public <T> CompletableFuture<T> findById(Class<T> entityClass, Object id) {
+        return execute(session -> session.findById(entityClass, id));
+    }
+    
+    @Override
+    public <T> CompletableFuture<List<T>> findAll(Class<T> entityClass) {
+        return execute(session -> session.findAll(entityClass));
+    }
+    
+    @Override
+    public <T> CompletableFuture<T> save(T entity) {
+        return execute(session -> session.save(entity));
+    }
+    
+    @Override
+    public <T> CompletableFuture<List<T>> createQuery(String sql, Class<T> resultClass) {
+        return execute(session -> session.createQuery(sql, resultClass));
+    }
+    
+    @Override
+    public <R> CompletableFuture<R> execute(Function<Session, R> work) {
+        if (!open) {
+            throw new IllegalStateException("AsyncSession is closed");
+        }
+        return CompletableFuture.supplyAsync(() -> runWithPermit(work), executor);
+    }
+    
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+    
+    @Override
+    public void close() {
+        open = false;
+    }
+    
+    private <R> R runWithPermit(Function<Session, R> work) {
+        try {
+            connectionPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+        
+        try (Session session = sessionFactory.openSession()) {
+            return work.apply(session);
+        } finally {
+            connectionPermits.release();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+/**
+ * Receives progress notifications from {@link Session#forEachChunk}.
+ */
+@FunctionalInterface
+public interface ChunkProgressListener {
+    
+    /**
+     * Called after a chunk has been committed.
+     *
+     * @param chunkNumber    the 1-based number of the chunk that was just processed
+     * @param chunkRows      the number of entities in that chunk
+     * @param processedRows  the total number of entities processed so far
+     */
+    void onChunkProcessed(int chunkNumber, int chunkRows, long processedRows);
+}
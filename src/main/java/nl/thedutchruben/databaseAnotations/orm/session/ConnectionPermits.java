@@ -0,0 +1,34 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the async operations holding connections at the same time to the size of the pools
+ * serving them. The limit can be changed while permits are taken, for when a pool is resized;
+ * a lower limit only takes effect as operations finish.
+ */
+final class ConnectionPermits extends Semaphore {
+    
+    private int limit;
+    
+    ConnectionPermits(int limit) {
+        super(limit, true);
+        this.limit = limit;
+    }
+    
+    /**
+     * Changes the number of permits to the new limit.
+     */
+    synchronized void resize(int newLimit) {
+        if (newLimit > limit) {
+            release(newLimit - limit);
+        } else if (newLimit < limit) {
+            reducePermits(limit - newLimit);
+        }
+        limit = newLimit;
+    }
+    
+    synchronized int getLimit() {
+        return limit;
+    }
+}
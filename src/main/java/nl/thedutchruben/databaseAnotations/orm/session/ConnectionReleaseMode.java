@@ -0,0 +1,33 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+/**
+ * Defines when a session hands its JDBC connection back to the pool.
+ */
+public enum ConnectionReleaseMode {
+    /**
+     * Borrow a connection per statement while no transaction is active,
+     * and release it as soon as the transaction completes.
+     */
+    AFTER_STATEMENT,
+    
+    /**
+     * Keep the connection across autocommit statements and release it when a transaction completes.
+     */
+    AFTER_TRANSACTION,
+    
+    /**
+     * Keep the connection until the session is closed.
+     */
+    ON_CLOSE;
+    
+    /**
+     * Parses a configuration value such as {@code after_statement}.
+     */
+    public static ConnectionReleaseMode parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown connection release mode: " + value, e);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import java.util.function.Supplier;
+
+/**
+ * Strategy that defines what {@link SessionFactory#getCurrentSession()} returns.
+ * Selected with the {@code orm.current_session_context} property: {@code thread}
+ * (default), {@code scoped}, or the name of a class with a {@code SessionFactory} constructor.
+ */
+public interface CurrentSessionContext {
+    
+    /**
+     * Gets the session bound to the current context.
+     */
+    Session currentSession();
+    
+    /**
+     * Binds the session to the current context for the duration of the work,
+     * restoring the previous binding afterwards.
+     */
+    <R> R callWithSession(Session session, Supplier<R> work);
+    
+    /**
+     * Removes the session bound to the current context, if any.
+     *
+     * @return the session that was bound, or null
+     */
+    Session unbind();
+}
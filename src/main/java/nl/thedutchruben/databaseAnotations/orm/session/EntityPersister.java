@@ -0,0 +1,296 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import nl.thedutchruben.databaseAnotations.orm.core.ColumnMetadata;
+import nl.thedutchruben.databaseAnotations.orm.core.EntityMetadata;
+import nl.thedutchruben.databaseAnotations.orm.core.RelationshipMetadata;
+import nl.thedutchruben.databaseAnotations.orm.core.RelationshipType;
+import nl.thedutchruben.databaseAnotations.orm.dialect.Dialect;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Builds the per-entity CRUD statements and binds entity state to them.
+ * Shared by the session implementations so they all render identical SQL.
+ * Values are bound and read through the dialect's type mappings, so each column
+ * goes through the typed JDBC accessor for its Java type.
+ */
+final class EntityPersister {
+    
+    private final Map<Class<?>, EntityMetadata> entityMetadataMap;
+    private final Dialect dialect;
+    
+    EntityPersister(Map<Class<?>, EntityMetadata> entityMetadataMap, Dialect dialect) {
+        this.entityMetadataMap = entityMetadataMap;
+        this.dialect = dialect;
+    }
+    
+    EntityMetadata getEntityMetadata(Class<?> entityClass) {
+        EntityMetadata metadata = entityMetadataMap.get(entityClass);
+        if (metadata == null) {
+            throw new RuntimeException("Entity class not registered: " + entityClass.getName());
+        }
+        return metadata;
+    }
+    
+    boolean isEntity(Class<?> type) {
+        return entityMetadataMap.containsKey(type);
+    }
+    
+    String buildInsertSql(EntityMetadata metadata) {
+        StringBuilder sql = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        
+        sql.append("INSERT INTO ").append(metadata.getFullTableName()).append(" (");
+        values.append("VALUES (");
+        
+        boolean first = true;
+        // Add basic columns
+        for (ColumnMetadata column : metadata.getColumns().values()) {
+            if (column.isPrimaryKey() && column.getGenerationType() != null) {
+                continue; // Skip auto-generated primary keys
+            }
+            
+            if (!first) {
+                sql.append(", ");
+                values.append(", ");
+            }
+            
+            sql.append(column.getColumnName());
+            values.append("?");
+            first = false;
+        }
+        
+        // Add foreign key columns for ManyToOne relationships
+        for (RelationshipMetadata relationship : metadata.getRelationships().values()) {
+            if (relationship.getRelationshipType() == RelationshipType.MANY_TO_ONE) {
+                String joinColumn = relationship.getJoinColumn();
+                if (joinColumn != null && !joinColumn.isEmpty()) {
+                    if (!first) {
+                        sql.append(", ");
+                        values.append(", ");
+                    }
+                    
+                    sql.append(joinColumn);
+                    values.append("?");
+                    first = false;
+                }
+            }
+        }
+        
+        sql.append(") ").append(values).append(")");
+        return sql.toString();
+    }
+    
+    String buildUpdateSql(EntityMetadata metadata) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("UPDATE ").append(metadata.getFullTableName()).append(" SET ");
+        
+        boolean first = true;
+        // Add basic columns
+        for (ColumnMetadata column : metadata.getColumns().values()) {
+            if (column.isPrimaryKey()) {
+                continue; // Skip primary key in SET clause
+            }
+            
+            if (!first) {
+                sql.append(", ");
+            }
+            
+            sql.append(column.getColumnName()).append(" = ?");
+            first = false;
+        }
+        
+        // Add foreign key columns for ManyToOne relationships
+        for (RelationshipMetadata relationship : metadata.getRelationships().values()) {
+            if (relationship.getRelationshipType() == RelationshipType.MANY_TO_ONE) {
+                String joinColumn = relationship.getJoinColumn();
+                if (joinColumn != null && !joinColumn.isEmpty()) {
+                    if (!first) {
+                        sql.append(", ");
+                    }
+                    
+                    sql.append(joinColumn).append(" = ?");
+                    first = false;
+                }
+            }
+        }
+        
+        ColumnMetadata pkColumn = metadata.getPrimaryKey();
+        if (pkColumn != null) {
+            sql.append(" WHERE ").append(pkColumn.getColumnName()).append(" = ?");
+        }
+        
+        return sql.toString();
+    }
+    
+    String buildDeleteSql(EntityMetadata metadata) {
+        ColumnMetadata pkColumn = metadata.getPrimaryKey();
+        return "DELETE FROM " + metadata.getFullTableName() +
+               " WHERE " + pkColumn.getColumnName() + " = ?";
+    }
+    
+    String buildSelectByIdSql(EntityMetadata metadata) {
+        StringBuilder sql = new StringBuilder(buildSelectAllSql(metadata));
+        
+        ColumnMetadata pkColumn = metadata.getPrimaryKey();
+        if (pkColumn != null) {
+            sql.append(" WHERE ").append(pkColumn.getColumnName()).append(" = ?");
+        }
+        
+        return sql.toString();
+    }
+    
+    String buildSelectAllSql(EntityMetadata metadata) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT ");
+        
+        boolean first = true;
+        // Add basic columns
+        for (ColumnMetadata column : metadata.getColumns().values()) {
+            if (!first) {
+                sql.append(", ");
+            }
+            sql.append(column.getColumnName());
+            first = false;
+        }
+        
+        // Add foreign key columns for ManyToOne relationships
+        for (RelationshipMetadata relationship : metadata.getRelationships().values()) {
+            if (relationship.getRelationshipType() == RelationshipType.MANY_TO_ONE) {
+                String joinColumn = relationship.getJoinColumn();
+                if (joinColumn != null && !joinColumn.isEmpty()) {
+                    if (!first) {
+                        sql.append(", ");
+                    }
+                    sql.append(joinColumn);
+                    first = false;
+                }
+            }
+        }
+        
+        sql.append(" FROM ").append(metadata.getFullTableName());
+        return sql.toString();
+    }
+    
+    void setInsertParameters(PreparedStatement stmt, Object entity, EntityMetadata metadata) throws SQLException {
+        int paramIndex = 1;
+        // Set basic column values
+        for (ColumnMetadata column : metadata.getColumns().values()) {
+            if (column.isPrimaryKey() && column.getGenerationType() != null) {
+                continue; // Skip auto-generated primary keys
+            }
+            
+            bind(stmt, paramIndex++, column, column.getValue(entity));
+        }
+        
+        // Set foreign key values for ManyToOne relationships
+        for (RelationshipMetadata relationship : metadata.getRelationships().values()) {
+            if (relationship.getRelationshipType() == RelationshipType.MANY_TO_ONE) {
+                String joinColumn = relationship.getJoinColumn();
+                if (joinColumn != null && !joinColumn.isEmpty()) {
+                    bindForeignKey(stmt, paramIndex++, entity, relationship);
+                }
+            }
+        }
+    }
+    
+    void setUpdateParameters(PreparedStatement stmt, Object entity, EntityMetadata metadata) throws SQLException {
+        int paramIndex = 1;
+        
+        // Set values for non-primary key columns
+        for (ColumnMetadata column : metadata.getColumns().values()) {
+            if (column.isPrimaryKey()) {
+                continue;
+            }
+            
+            bind(stmt, paramIndex++, column, column.getValue(entity));
+        }
+        
+        // Set foreign key values for ManyToOne relationships
+        for (RelationshipMetadata relationship : metadata.getRelationships().values()) {
+            if (relationship.getRelationshipType() == RelationshipType.MANY_TO_ONE) {
+                String joinColumn = relationship.getJoinColumn();
+                if (joinColumn != null && !joinColumn.isEmpty()) {
+                    bindForeignKey(stmt, paramIndex++, entity, relationship);
+                }
+            }
+        }
+        
+        // Set primary key value for WHERE clause
+        ColumnMetadata pkColumn = metadata.getPrimaryKey();
+        if (pkColumn != null) {
+            bind(stmt, paramIndex, pkColumn, pkColumn.getValue(entity));
+        }
+    }
+    
+    /**
+     * Creates an entity instance and populates its basic columns from the current row.
+     * Relationships are left untouched; loading them is up to the calling session.
+     */
+    <T> T instantiate(ResultSet rs, Class<T> entityClass, EntityMetadata metadata) throws SQLException {
+        T entity;
+        try {
+            entity = entityClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Failed to create entity instance", e);
+        }
+        
+        for (ColumnMetadata column : metadata.getColumns().values()) {
+            Object value = read(rs, rs.findColumn(column.getColumnName()), column);
+            if (value != null) {
+                column.setValue(entity, value);
+            }
+        }
+        
+        return entity;
+    }
+    
+    /**
+     * Binds a value of a column, or a value compared with it, with the column's type mapping.
+     */
+    void bind(PreparedStatement stmt, int index, ColumnMetadata column, Object value) throws SQLException {
+        dialect.getTypeMapping(column.getJavaType()).bind(stmt, index, value);
+    }
+    
+    /**
+     * Binds query parameters by their own types.
+     */
+    void bindParameters(PreparedStatement stmt, Object... parameters) throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            dialect.bindValue(stmt, i + 1, parameters[i]);
+        }
+    }
+    
+    /**
+     * Reads a column value as the column's Java type, or null for SQL NULL.
+     */
+    Object read(ResultSet rs, int index, ColumnMetadata column) throws SQLException {
+        return dialect.getTypeMapping(column.getJavaType()).read(rs, index);
+    }
+    
+    /**
+     * Reads a join column as the type of the primary key it references.
+     */
+    Object readForeignKey(ResultSet rs, String joinColumn, RelationshipMetadata relationship) throws SQLException {
+        ColumnMetadata targetPK = getEntityMetadata(relationship.getTargetEntity()).getPrimaryKey();
+        int index = rs.findColumn(joinColumn);
+        return targetPK != null ? read(rs, index, targetPK) : rs.getObject(index);
+    }
+    
+    private void bindForeignKey(PreparedStatement stmt, int index, Object entity, RelationshipMetadata relationship)
+            throws SQLException {
+        EntityMetadata relatedMetadata = getEntityMetadata(relationship.getTargetEntity());
+        ColumnMetadata relatedPK = relatedMetadata.getPrimaryKey();
+        if (relatedPK == null) {
+            stmt.setObject(index, null);
+            return;
+        }
+        
+        // Get the primary key value from the related entity
+        Object relatedEntity = relationship.getValue(entity);
+        bind(stmt, index, relatedPK, relatedEntity != null ? relatedPK.getValue(relatedEntity) : null);
+    }
+}
@@ -0,0 +1,41 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import java.sql.Connection;
+
+/**
+ * Transaction isolation levels, mapped onto the JDBC constants.
+ */
+public enum IsolationLevel {
+    /**
+     * Dirty reads, non-repeatable reads and phantom reads can occur.
+     */
+    READ_UNCOMMITTED(Connection.TRANSACTION_READ_UNCOMMITTED),
+    
+    /**
+     * Only committed data is read; repeated reads may see newer commits.
+     */
+    READ_COMMITTED(Connection.TRANSACTION_READ_COMMITTED),
+    
+    /**
+     * Rows read once keep their value for the rest of the transaction (snapshot reads on most databases).
+     */
+    REPEATABLE_READ(Connection.TRANSACTION_REPEATABLE_READ),
+    
+    /**
+     * Transactions behave as if they ran one after another.
+     */
+    SERIALIZABLE(Connection.TRANSACTION_SERIALIZABLE);
+    
+    private final int jdbcLevel;
+    
+    IsolationLevel(int jdbcLevel) {
+        this.jdbcLevel = jdbcLevel;
+    }
+    
+    /**
+     * Gets the matching {@link Connection} isolation constant.
+     */
+    public int getJdbcLevel() {
+        return jdbcLevel;
+    }
+}
@@ -0,0 +1,28 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+/**
+ * Defines how reads are spread over the configured read replicas.
+ */
+public enum LoadBalancingStrategy {
+    /**
+     * Use the replicas in turn.
+     */
+    ROUND_ROBIN,
+    
+    /**
+     * Use the replica whose pool has the fewest busy connections.
+     * Only HikariCP pools report their load; other data sources are used in turn.
+     */
+    LEAST_BUSY;
+    
+    /**
+     * Parses a configuration value such as {@code least_busy}.
+     */
+    public static LoadBalancingStrategy parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown load balancing strategy: " + value, e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import nl.thedutchruben.databaseAnotations.orm.exception.TransactionException;
+
+import java.sql.Savepoint;
+
+/**
+ * A transaction nested in another one, mapped onto a savepoint of the outer transaction.
+ * Committing releases the savepoint, so the work only becomes durable when the outer
+ * transaction commits; rolling back undoes the nested work and leaves the outer
+ * transaction active.
+ */
+final class NestedTransaction implements Transaction {
+    
+    private final TransactionImpl parent;
+    private final Savepoint savepoint;
+    private boolean active = true;
+    
+    NestedTransaction(TransactionImpl parent, Savepoint savepoint) {
+        this.parent = parent;
+        this.savepoint = savepoint;
+    }
+    
+    @Override
+    public void commit() {
+        checkActive();
+        active = false;
+        parent.releaseSavepoint(savepoint);
+    }
+    
+    @Override
+    public void rollback() {
+        checkActive();
+        active = false;
+        parent.rollbackTo(savepoint);
+        parent.releaseSavepoint(savepoint);
+    }
+    
+    @Override
+    public boolean isActive() {
+        return active && parent.isActive();
+    }
+    
+    @Override
+    public Savepoint savepoint() {
+        checkActive();
+        return parent.savepoint();
+    }
+    
+    @Override
+    public Savepoint savepoint(String name) {
+        checkActive();
+        return parent.savepoint(name);
+    }
+    
+    @Override
+    public void rollbackTo(Savepoint savepoint) {
+        checkActive();
+        parent.rollbackTo(savepoint);
+    }
+    
+    @Override
+    public void releaseSavepoint(Savepoint savepoint) {
+        checkActive();
+        parent.releaseSavepoint(savepoint);
+    }
+    
+    private void checkActive() {
+        if (!isActive()) {
+            throw TransactionException.notActive();
+        }
+    }
+}
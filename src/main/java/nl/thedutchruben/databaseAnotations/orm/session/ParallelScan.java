@@ -0,0 +1,297 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import nl.thedutchruben.databaseAnotations.orm.core.ColumnMetadata;
+import nl.thedutchruben.databaseAnotations.orm.core.EntityMetadata;
+import nl.thedutchruben.databaseAnotations.orm.dialect.Dialect;
+import nl.thedutchruben.databaseAnotations.orm.exception.MappingException;
+import nl.thedutchruben.databaseAnotations.orm.util.ExecutorUtils;
+import nl.thedutchruben.databaseAnotations.orm.util.TypeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Scans an entity table in parallel by splitting it into primary-key ranges.
+ * Integer keys are split evenly between MIN and MAX; other keys, including
+ * decimal ones, use sampled boundaries. Every range is loaded by its own session, so each runs on its
+ * own pooled connection.
+ */
+public class ParallelScan<T> {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ParallelScan.class);
+    
+    private static final Set<Class<?>> INTEGER_KEY_TYPES = Set.of(Long.class, Integer.class, Short.class, Byte.class);
+    
+    private final SessionFactoryImpl sessionFactory;
+    private final Class<T> entityClass;
+    private final EntityMetadata metadata;
+    private final Dialect dialect;
+    private final ColumnMetadata pkColumn;
+    
+    private int partitions;
+    private ExecutorService executor;
+    
+    ParallelScan(SessionFactoryImpl sessionFactory, Class<T> entityClass, EntityMetadata metadata, Dialect dialect) {
+        this.sessionFactory = sessionFactory;
+        this.entityClass = entityClass;
+        this.metadata = metadata;
+        this.dialect = dialect;
+        this.pkColumn = metadata.getPrimaryKey();
+        if (pkColumn == null) {
+            throw MappingException.noPrimaryKey(entityClass);
+        }
+        // Leave one connection for the caller's own session
+        this.partitions = Math.max(1, sessionFactory.getMaximumPoolSize() - 1);
+    }
+    
+    /**
+     * Sets the number of key ranges to scan concurrently (default: pool size - 1).
+     */
+    public ParallelScan<T> partitions(int partitions) {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("Partitions must be positive: " + partitions);
+        }
+        this.partitions = partitions;
+        return this;
+    }
+    
+    /**
+     * Sets the executor that runs the partitions. The caller remains responsible for
+     * shutting it down; by default a temporary pool with one thread per partition is used.
+     */
+    public ParallelScan<T> executor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+    
+    /**
+     * Loads every partition concurrently and hands its rows to the consumer.
+     * The consumer is invoked from the worker threads and must be thread-safe.
+     * Blocks until all partitions are processed.
+     */
+    public void forEachPartition(BiConsumer<Partition, List<T>> consumer) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        runPartitions(partition -> {
+            List<T> rows = load(partition);
+            consumer.accept(partition, rows);
+            return null;
+        }, futures);
+        
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw unwrap(e);
+        }
+    }
+    
+    /**
+     * Starts loading every partition concurrently and returns all rows as one stream,
+     * in primary-key order. Partitions are consumed as they complete.
+     */
+    public Stream<T> stream() {
+        List<CompletableFuture<List<T>>> futures = new ArrayList<>();
+        runPartitions(this::load, futures);
+        
+        return futures.stream().flatMap(future -> {
+            try {
+                return future.join().stream();
+            } catch (CompletionException e) {
+                futures.forEach(other -> other.cancel(true));
+                throw unwrap(e);
+            }
+        });
+    }
+    
+    /**
+     * Computes the key ranges this scan will use.
+     */
+    public List<Partition> computePartitions() {
+        try (Connection connection = sessionFactory.getDataSource().getConnection()) {
+            List<Object> boundaries = INTEGER_KEY_TYPES.contains(TypeUtils.getWrapperType(pkColumn.getJavaType()))
+                ? integerBoundaries(connection)
+                : sampledBoundaries(connection);
+            if (boundaries == null) {
+                return new ArrayList<>();
+            }
+            
+            List<Partition> result = new ArrayList<>();
+            Object lower = null;
+            for (Object boundary : boundaries) {
+                result.add(new Partition(result.size(), lower, boundary));
+                lower = boundary;
+            }
+            result.add(new Partition(result.size(), lower, null));
+            return result;
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to compute scan partitions for " + entityClass.getSimpleName(), e);
+        }
+    }
+    
+    private <R> void runPartitions(PartitionWork<R> work, List<CompletableFuture<R>> futures) {
+        List<Partition> ranges = computePartitions();
+        if (ranges.isEmpty()) {
+            return;
+        }
+        logger.debug("Scanning {} in {} partitions", entityClass.getSimpleName(), ranges.size());
+        
+        ExecutorService pool = executor != null ? executor : ExecutorUtils.newFixedDaemonPool(ranges.size(), "orm-parallel-scan");
+        for (Partition partition : ranges) {
+            futures.add(CompletableFuture.supplyAsync(() -> work.run(partition), pool));
+        }
+        
+        if (executor == null) {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .whenComplete((result, error) -> pool.shutdown());
+        }
+    }
+    
+    private List<T> load(Partition partition) {
+        String orderBy = " ORDER BY " + pkColumn.getColumnName();
+        String pk = pkColumn.getColumnName();
+        String sql = sessionFactory.getPersister().buildSelectAllSql(metadata);
+        List<Object> parameters = new ArrayList<>();
+        
+        if (partition.getLowerBound() != null && partition.getUpperBound() != null) {
+            sql += " WHERE " + pk + " >= ? AND " + pk + " < ?";
+            parameters.add(partition.getLowerBound());
+            parameters.add(partition.getUpperBound());
+        } else if (partition.getLowerBound() != null) {
+            sql += " WHERE " + pk + " >= ?";
+            parameters.add(partition.getLowerBound());
+        } else if (partition.getUpperBound() != null) {
+            sql += " WHERE " + pk + " < ?";
+            parameters.add(partition.getUpperBound());
+        }
+        
+        try (Session session = sessionFactory.openSession()) {
+            return ((SessionImpl) session).list(entityClass, sql + orderBy, parameters.toArray());
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to scan partition " + partition, e);
+        }
+    }
+    
+    private List<Object> integerBoundaries(Connection connection) throws SQLException {
+        String pk = pkColumn.getColumnName();
+        String sql = "SELECT MIN(" + pk + "), MAX(" + pk + ") FROM " + metadata.getFullTableName();
+        
+        BigInteger min;
+        BigInteger max;
+        try (PreparedStatement stmt = connection.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            if (!rs.next() || rs.getObject(1) == null) {
+                return null;
+            }
+            min = BigInteger.valueOf(rs.getLong(1));
+            max = BigInteger.valueOf(rs.getLong(2));
+        }
+        
+        // max - min does not fit in a long when the keys span more than half the long range
+        BigInteger step = max.subtract(min).divide(BigInteger.valueOf(partitions)).add(BigInteger.ONE);
+        List<Object> boundaries = new ArrayList<>();
+        for (int i = 1; i < partitions; i++) {
+            BigInteger boundary = min.add(step.multiply(BigInteger.valueOf(i)));
+            if (boundary.compareTo(max) > 0) {
+                break;
+            }
+            boundaries.add(toKeyType(boundary));
+        }
+        return boundaries;
+    }
+    
+    /**
+     * Converts a boundary, which lies between MIN and MAX, to the type of the primary key.
+     */
+    private Object toKeyType(BigInteger value) {
+        Class<?> type = TypeUtils.getWrapperType(pkColumn.getJavaType());
+        if (type == Integer.class) {
+            return value.intValueExact();
+        } else if (type == Short.class) {
+            return value.shortValueExact();
+        } else if (type == Byte.class) {
+            return value.byteValueExact();
+        }
+        return value.longValueExact();
+    }
+    
+    private List<Object> sampledBoundaries(Connection connection) throws SQLException {
+        long rowCount;
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT COUNT(*) FROM " + metadata.getFullTableName());
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            rowCount = rs.getLong(1);
+        }
+        if (rowCount == 0) {
+            return null;
+        }
+        
+        String pk = pkColumn.getColumnName();
+        String baseSql = "SELECT " + pk + " FROM " + metadata.getFullTableName() + " ORDER BY " + pk;
+        long rowsPerPartition = rowCount / partitions;
+        List<Object> boundaries = new ArrayList<>();
+        if (rowsPerPartition == 0) {
+            return boundaries;
+        }
+        
+        for (int i = 1; i < partitions; i++) {
+            String sql = dialect.getLimitString(baseSql, (int) Math.min(Integer.MAX_VALUE, rowsPerPartition * i), 1);
+            try (PreparedStatement stmt = connection.prepareStatement(sql);
+                 ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    boundaries.add(sessionFactory.getPersister().read(rs, 1, pkColumn));
+                }
+            }
+        }
+        return boundaries;
+    }
+    
+    private static RuntimeException unwrap(CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new RuntimeException("Parallel scan failed", cause);
+    }
+    
+    @FunctionalInterface
+    private interface PartitionWork<R> {
+        R run(Partition partition);
+    }
+    
+    /**
+     * A primary-key range: lower bound inclusive, upper bound exclusive; null means unbounded.
+     */
+    public static class Partition {
+        private final int index;
+        private final Object lowerBound;
+        private final Object upperBound;
+        
+        Partition(int index, Object lowerBound, Object upperBound) {
+            this.index = index;
+            this.lowerBound = lowerBound;
+            this.upperBound = upperBound;
+        }
+        
+        public int getIndex() { return index; }
+        public Object getLowerBound() { return lowerBound; }
+        public Object getUpperBound() { return upperBound; }
+        
+        @Override
+        public String toString() {
+            return "Partition{" + index + ": [" + lowerBound + ", " + upperBound + ")}";
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses the read replica that serves the next read-only connection.
+ */
+public class ReplicaRouter {
+    
+    private final List<DataSource> replicas;
+    private final LoadBalancingStrategy strategy;
+    private final AtomicInteger counter = new AtomicInteger();
+    
+    public ReplicaRouter(List<DataSource> replicas, LoadBalancingStrategy strategy) {
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("At least one read replica is required");
+        }
+        this.replicas = Collections.unmodifiableList(new ArrayList<>(replicas));
+        this.strategy = strategy;
+    }
+    
+    /**
+     * Gets the replica for the next connection.
+     */
+    public DataSource nextReplica() {
+        int start = Math.floorMod(counter.getAndIncrement(), replicas.size());
+        if (strategy == LoadBalancingStrategy.ROUND_ROBIN || replicas.size() == 1) {
+            return replicas.get(start);
+        }
+        
+        // Scan from the round-robin position so equally loaded replicas still take turns
+        DataSource best = replicas.get(start);
+        int bestLoad = load(best);
+        for (int i = 1; i < replicas.size() && bestLoad > 0; i++) {
+            DataSource candidate = replicas.get((start + i) % replicas.size());
+            int candidateLoad = load(candidate);
+            if (candidateLoad < bestLoad) {
+                best = candidate;
+                bestLoad = candidateLoad;
+            }
+        }
+        return best;
+    }
+    
+    public List<DataSource> getReplicas() {
+        return replicas;
+    }
+    
+    public LoadBalancingStrategy getStrategy() {
+        return strategy;
+    }
+    
+    /**
+     * Closes the replica pools that are managed by HikariCP.
+     */
+    void close() {
+        for (DataSource replica : replicas) {
+            if (replica instanceof HikariDataSource) {
+                ((HikariDataSource) replica).close();
+            }
+        }
+    }
+    
+    private static int load(DataSource replica) {
+        if (replica instanceof HikariDataSource) {
+            HikariPoolMXBean pool = ((HikariDataSource) replica).getHikariPoolMXBean();
+            if (pool != null) {
+                return pool.getActiveConnections() + pool.getThreadsAwaitingConnection();
+            }
+        }
+        return 0;
+    }
+}
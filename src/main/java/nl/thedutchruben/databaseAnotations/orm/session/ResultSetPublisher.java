@@ -0,0 +1,222 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes query results row by row from an open cursor.
+ * Rows are only read from the result set when the subscriber has outstanding demand,
+ * the driver fetch size follows the requested amount, and cancelling closes the
+ * statement. Supports a single subscriber.
+ */
+final class ResultSetPublisher<T> implements Flow.Publisher<T> {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ResultSetPublisher.class);
+    
+    /**
+     * Upper bound for the fetch size hint, so unbounded demand does not buffer the whole result.
+     */
+    static final int MAX_FETCH_SIZE = 1000;
+    
+    private final String sql;
+    private final StatementOpener opener;
+    private final Runnable closeHook;
+    private final RowMapper<T> rowMapper;
+    private final Executor executor;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    
+    ResultSetPublisher(String sql, StatementOpener opener, RowMapper<T> rowMapper, Executor executor) {
+        this(sql, opener, null, rowMapper, executor);
+    }
+    
+    /**
+     * @param closeHook invoked once after a statement returned by the opener has been closed
+     */
+    ResultSetPublisher(String sql, StatementOpener opener, Runnable closeHook, RowMapper<T> rowMapper,
+                       Executor executor) {
+        this.sql = sql;
+        this.opener = opener;
+        this.closeHook = closeHook;
+        this.rowMapper = rowMapper;
+        this.executor = executor;
+    }
+    
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+                
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Query publisher supports a single subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new CursorSubscription(subscriber));
+    }
+    
+    /**
+     * Opens the statement for the query on the session connection.
+     */
+    @FunctionalInterface
+    interface StatementOpener {
+        PreparedStatement open(String sql) throws SQLException;
+    }
+    
+    /**
+     * Maps the current row to a result object.
+     */
+    @FunctionalInterface
+    interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+    
+    private final class CursorSubscription implements Flow.Subscription, Runnable {
+        
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger pendingDrains = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable pendingError;
+        private boolean done;
+        private PreparedStatement statement;
+        private ResultSet resultSet;
+        private int fetchSize;
+        
+        CursorSubscription(Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+        
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancelled = true;
+                scheduleDrain(new IllegalArgumentException("Requested amount must be positive: " + n));
+                return;
+            }
+            demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            scheduleDrain(null);
+        }
+        
+        @Override
+        public void cancel() {
+            cancelled = true;
+            scheduleDrain(null);
+        }
+        
+        private void scheduleDrain(Throwable error) {
+            if (error != null) {
+                pendingError = error;
+            }
+            // Only the caller that moves the counter from 0 drains; others just register work
+            if (pendingDrains.getAndIncrement() == 0) {
+                if (executor != null) {
+                    executor.execute(this);
+                } else {
+                    run();
+                }
+            }
+        }
+        
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = pendingDrains.addAndGet(-missed);
+            } while (missed != 0);
+        }
+        
+        private void drain() {
+            if (done) {
+                return;
+            }
+            if (cancelled) {
+                finish(pendingError);
+                return;
+            }
+            
+            try {
+                long requested = demand.get();
+                if (requested == 0) {
+                    return;
+                }
+                openCursor(requested);
+                
+                long emitted = 0;
+                while (emitted < requested && !cancelled) {
+                    if (!resultSet.next()) {
+                        finish(null);
+                        return;
+                    }
+                    subscriber.onNext(rowMapper.map(resultSet));
+                    emitted++;
+                }
+                demand.addAndGet(-emitted);
+                
+                if (cancelled) {
+                    finish(pendingError);
+                }
+            } catch (SQLException | RuntimeException e) {
+                finish(e);
+            }
+        }
+        
+        private void openCursor(long requested) throws SQLException {
+            int hint = (int) Math.max(1, Math.min(requested, MAX_FETCH_SIZE));
+            if (resultSet == null) {
+                statement = opener.open(sql);
+                statement.setFetchSize(hint);
+                logger.debug("Executing SQL: {} (fetch size {})", sql, hint);
+                resultSet = statement.executeQuery();
+                fetchSize = hint;
+            } else if (hint != fetchSize) {
+                resultSet.setFetchSize(hint);
+                fetchSize = hint;
+            }
+        }
+        
+        private void finish(Throwable error) {
+            done = true;
+            closeCursor();
+            if (error != null) {
+                subscriber.onError(error);
+            } else if (!cancelled) {
+                subscriber.onComplete();
+            }
+        }
+        
+        private void closeCursor() {
+            boolean opened = statement != null;
+            try {
+                if (resultSet != null) {
+                    resultSet.close();
+                }
+                if (statement != null) {
+                    statement.close();
+                }
+            } catch (SQLException e) {
+                logger.warn("Error closing query cursor", e);
+            } finally {
+                resultSet = null;
+                statement = null;
+                if (opened && closeHook != null) {
+                    closeHook.run();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Describes how often and how quickly a failed transaction is retried.
+ * Delays grow exponentially from the initial backoff up to the maximum, and each delay
+ * is shortened by a random share of up to the jitter factor so that competing
+ * transactions do not retry in lockstep.
+ */
+public class RetryPolicy {
+    
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final double multiplier;
+    private final double jitter;
+    
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoff = builder.initialBackoff;
+        this.maxBackoff = builder.maxBackoff;
+        this.multiplier = builder.multiplier;
+        this.jitter = builder.jitter;
+    }
+    
+    /**
+     * Gets the default policy: 5 attempts, 20 ms initial backoff doubling up to 1 s, 50% jitter.
+     */
+    public static RetryPolicy defaults() {
+        return builder().build();
+    }
+    
+    /**
+     * Gets a policy that runs the work once.
+     */
+    public static RetryPolicy none() {
+        return builder().maxAttempts(1).build();
+    }
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    /**
+     * Gets the delay before the given retry, where attempt 1 is the first retry.
+     */
+    public Duration getBackoff(int attempt) {
+        double base = initialBackoff.toMillis() * Math.pow(multiplier, attempt - 1);
+        double capped = Math.min(base, maxBackoff.toMillis());
+        double jittered = capped * (1 - jitter * ThreadLocalRandom.current().nextDouble());
+        return Duration.ofMillis(Math.round(jittered));
+    }
+    
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+    
+    public Duration getInitialBackoff() {
+        return initialBackoff;
+    }
+    
+    public Duration getMaxBackoff() {
+        return maxBackoff;
+    }
+    
+    public double getMultiplier() {
+        return multiplier;
+    }
+    
+    public double getJitter() {
+        return jitter;
+    }
+    
+    /**
+     * Builder for retry policies.
+     */
+    public static class Builder {
+        private int maxAttempts = 5;
+        private Duration initialBackoff = Duration.ofMillis(20);
+        private Duration maxBackoff = Duration.ofSeconds(1);
+        private double multiplier = 2.0;
+        private double jitter = 0.5;
+        
+        /**
+         * Sets the total number of attempts, including the first one.
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("Max attempts must be at least 1: " + maxAttempts);
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+        
+        public Builder initialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+            return this;
+        }
+        
+        public Builder maxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+        
+        public Builder multiplier(double multiplier) {
+            if (multiplier < 1) {
+                throw new IllegalArgumentException("Multiplier must be at least 1: " + multiplier);
+            }
+            this.multiplier = multiplier;
+            return this;
+        }
+        
+        /**
+         * Sets the largest share of a delay, between 0 and 1, that is randomly taken off.
+         */
+        public Builder jitter(double jitter) {
+            if (jitter < 0 || jitter > 1) {
+                throw new IllegalArgumentException("Jitter must be between 0 and 1: " + jitter);
+            }
+            this.jitter = jitter;
+            return this;
+        }
+        
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
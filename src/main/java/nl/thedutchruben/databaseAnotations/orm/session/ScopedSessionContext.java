@@ -0,0 +1,49 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import java.util.function.Supplier;
+
+/**
+ * Binds sessions only for the extent of {@link SessionFactory#runWithSession}, in the
+ * style of {@code ScopedValue}: the binding is always removed when the scope exits,
+ * so nothing is retained by short-lived or virtual threads and no session is opened
+ * implicitly. Outside a scope {@link #currentSession()} fails fast.
+ */
+public class ScopedSessionContext implements CurrentSessionContext {
+    
+    private final ThreadLocal<Session> scopedSession = new ThreadLocal<>();
+    
+    public ScopedSessionContext(SessionFactory sessionFactory) {
+        // The factory is not needed: sessions are always supplied by the scope
+    }
+    
+    @Override
+    public Session currentSession() {
+        Session session = scopedSession.get();
+        if (session == null) {
+            throw new IllegalStateException("No session bound to the current scope; use SessionFactory.runWithSession");
+        }
+        return session;
+    }
+    
+    @Override
+    public <R> R callWithSession(Session session, Supplier<R> work) {
+        Session previous = scopedSession.get();
+        scopedSession.set(session);
+        try {
+            return work.get();
+        } finally {
+            if (previous != null) {
+                scopedSession.set(previous);
+            } else {
+                scopedSession.remove();
+            }
+        }
+    }
+    
+    @Override
+    public Session unbind() {
+        Session session = scopedSession.get();
+        scopedSession.remove();
+        return session;
+    }
+}
@@ -1,6 +1,11 @@
 package nl.thedutchruben.databaseAnotations.orm.session;
 
+import nl.thedutchruben.databaseAnotations.orm.query.QueryBuilder;
+
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
 
 /**
  * Interface for database session operations.
@@ -38,10 +43,68 @@ public interface Session extends AutoCloseable {
      */
     <T> List<T> findAll(Class<T> entityClass);
     
+    /**
+     * Walks all entities of a given type in primary-key order, one chunk at a time.
+     * Chunks are read with keyset pagination; each chunk runs in its own transaction
+     * that is flushed and committed after the action, and the session is cleared in
+     * between so memory stays bounded. Must not be called inside an active transaction.
+     *
+     * @return the number of entities processed
+     */
+    <T> long forEachChunk(Class<T> entityClass, int chunkSize, Consumer<List<T>> action);
+    
+    /**
+     * Same as {@link #forEachChunk(Class, int, Consumer)}, reporting progress after every chunk.
+     */
+    <T> long forEachChunk(Class<T> entityClass, int chunkSize, Consumer<List<T>> action,
+                          ChunkProgressListener progressListener);
+    
+    /**
+     * Locks and returns up to batchSize rows in primary-key order, skipping rows locked
+     * by other transactions, so concurrent workers can dequeue without blocking each other.
+     * Requires an active transaction; the claim ends when it commits or rolls back.
+     */
+    <T> List<T> claimBatch(Class<T> entityClass, int batchSize);
+    
+    /**
+     * Same as {@link #claimBatch(Class, int)}, only claiming rows that match the SQL condition.
+     * The parameters are bound to the {@code ?} placeholders of the condition.
+     */
+    <T> List<T> claimBatch(Class<T> entityClass, int batchSize, String condition, Object... parameters);
+    
     /**
      * Executes a custom SQL query and returns the result list.
+     * The parameters are bound to the {@code ?} placeholders of the query.
+     */
+    <T> List<T> createQuery(String sql, Class<T> resultClass, Object... parameters);
+    
+    /**
+     * Creates a query builder for an entity class.
      */
-    <T> List<T> createQuery(String sql, Class<T> resultClass);
+    <T> QueryBuilder<T> createQueryBuilder(Class<T> entityClass);
+    
+    /**
+     * Executes a query built with {@link #createQueryBuilder(Class)}, binding the values of its conditions.
+     */
+    <T> List<T> createQuery(QueryBuilder<T> query);
+    
+    /**
+     * Executes a custom SQL query and publishes its rows as they are read.
+     * Rows are fetched from an open cursor only as the subscriber requests them and
+     * cancelling closes the statement. Outside a transaction the cursor is read on a
+     * connection of its own, in a read transaction that is rolled back when it closes;
+     * inside one it is read on the transaction's connection and ends with it. The session
+     * must stay open until the subscription completes. Demand is served on the thread
+     * that calls {@code request}.
+     */
+    <T> Flow.Publisher<T> createQueryPublisher(String sql, Class<T> resultClass);
+    
+    /**
+     * Same as {@link #createQueryPublisher(String, Class)}, reading rows on the given executor.
+     * The parameters are bound to the {@code ?} placeholders of the query.
+     */
+    <T> Flow.Publisher<T> createQueryPublisher(String sql, Class<T> resultClass, Executor executor,
+                                               Object... parameters);
     
     /**
      * Executes a native SQL query.
@@ -53,6 +116,19 @@ public interface Session extends AutoCloseable {
      */
     Transaction beginTransaction();
     
+    /**
+     * Begins a new transaction with the given isolation level, read-only flag and
+     * statement timeout; the connection's own settings are restored when it completes.
+     */
+    Transaction beginTransaction(TransactionOptions options);
+    
+    /**
+     * Begins a nested transaction backed by a savepoint of the active transaction,
+     * or a regular transaction when none is active. Rolling the nested transaction
+     * back only undoes its own work.
+     */
+    Transaction beginNestedTransaction();
+    
     /**
      * Gets the current transaction.
      */
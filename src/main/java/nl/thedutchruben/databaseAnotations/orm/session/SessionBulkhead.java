@@ -0,0 +1,134 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import nl.thedutchruben.databaseAnotations.orm.exception.SessionRejectedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control for sessions opened by a factory.
+ * At most {@code maxConcurrent} sessions are open at once. Further callers wait in
+ * arrival order for up to the wait budget; once {@code maxQueue} callers are waiting,
+ * new callers are rejected immediately instead of piling up on the connection pool.
+ */
+public class SessionBulkhead {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SessionBulkhead.class);
+    
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private final long maxWaitMillis;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    
+    // Metrics
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder totalQueueNanos = new LongAdder();
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+    
+    SessionBulkhead(int maxConcurrent, int maxQueue, long maxWaitMillis) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("Max concurrent sessions must be positive: " + maxConcurrent);
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueue = Math.max(0, maxQueue);
+        this.maxWaitMillis = Math.max(0, maxWaitMillis);
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+    
+    /**
+     * Waits for a session permit.
+     *
+     * @throws SessionRejectedException if the queue is full, the wait budget ran out or the thread was interrupted
+     */
+    void acquire() {
+        try {
+            // A zero timeout respects fairness, unlike tryAcquire() which would barge past waiting callers
+            if (permits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+                admitted.increment();
+                return;
+            }
+            
+            if (waiting.incrementAndGet() > maxQueue) {
+                waiting.decrementAndGet();
+                rejected.increment();
+                logger.debug("Session rejected, {} callers already waiting", maxQueue);
+                throw SessionRejectedException.queueFull(maxQueue);
+            }
+            
+            long start = System.nanoTime();
+            boolean acquired;
+            try {
+                acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+            } finally {
+                waiting.decrementAndGet();
+                recordQueueTime(System.nanoTime() - start);
+            }
+            
+            if (!acquired) {
+                timedOut.increment();
+                throw SessionRejectedException.timedOut(maxWaitMillis);
+            }
+            admitted.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw SessionRejectedException.interrupted(e);
+        }
+    }
+    
+    void release() {
+        permits.release();
+    }
+    
+    private void recordQueueTime(long nanos) {
+        queued.increment();
+        totalQueueNanos.add(nanos);
+        long currentMax;
+        do {
+            currentMax = maxQueueNanos.get();
+        } while (nanos > currentMax && !maxQueueNanos.compareAndSet(currentMax, nanos));
+    }
+    
+    /**
+     * Gets a snapshot of the bulkhead's state and counters.
+     */
+    public BulkheadStats getStats() {
+        BulkheadStats stats = new BulkheadStats();
+        stats.maxConcurrent = maxConcurrent;
+        stats.inFlight = maxConcurrent - permits.availablePermits();
+        stats.waiting = waiting.get();
+        stats.admitted = admitted.sum();
+        stats.rejected = rejected.sum();
+        stats.timedOut = timedOut.sum();
+        stats.queued = queued.sum();
+        stats.averageQueueTimeMs = stats.queued > 0 ? totalQueueNanos.sum() / 1_000_000.0 / stats.queued : 0;
+        stats.maxQueueTimeMs = maxQueueNanos.get() / 1_000_000.0;
+        return stats;
+    }
+    
+    /**
+     * Bulkhead statistics data class.
+     */
+    public static class BulkheadStats {
+        public int maxConcurrent;
+        public int inFlight;
+        public int waiting;
+        public long admitted;
+        /** Callers turned away because the queue was full. */
+        public long rejected;
+        /** Callers that waited for the whole budget without getting a session. */
+        public long timedOut;
+        /** Callers that had to wait, whether they were admitted or timed out. */
+        public long queued;
+        public double averageQueueTimeMs;
+        public double maxQueueTimeMs;
+    }
+}
@@ -1,5 +1,10 @@
 package nl.thedutchruben.databaseAnotations.orm.session;
 
+import nl.thedutchruben.databaseAnotations.orm.core.PartitionManager;
+
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
 /**
  * Factory for creating database sessions.
  */
@@ -11,10 +16,75 @@ public interface SessionFactory extends AutoCloseable {
     Session openSession();
     
     /**
-     * Gets the current session bound to this thread.
+     * Opens a session that rejects writes and runs on the read replicas, if any are configured.
+     */
+    Session openReadOnlySession();
+    
+    /**
+     * Opens a new stateless session for bulk operations. Stateless sessions only work with the
+     * main database and throw {@link UnsupportedOperationException} for sharded entities.
+     */
+    StatelessSession openStatelessSession();
+    
+    /**
+     * Opens an asynchronous session running on the factory's default executor
+     * (virtual threads when the runtime supports them).
+     */
+    AsyncSession openAsyncSession();
+    
+    /**
+     * Opens an asynchronous session running on the given executor.
+     */
+    AsyncSession openAsyncSession(Executor executor);
+    
+    /**
+     * Creates a parallel scan that reads an entity table in primary-key ranges
+     * on separate pooled connections.
+     *
+     * @throws UnsupportedOperationException if the entity is sharded
+     */
+    <T> ParallelScan<T> parallelScan(Class<T> entityClass);
+    
+    /**
+     * Gets the factory's write pipeline, which group-commits inserts submitted by many
+     * threads. The pipeline's writer thread is started on first use.
+     */
+    WritePipeline getWritePipeline();
+    
+    /**
+     * Gets the manager that keeps the range partitions of {@code @Partitioned} entities current
+     * in the main database and on every shard.
+     */
+    PartitionManager getPartitionManager();
+    
+    /**
+     * Gets the current session as defined by the configured {@link CurrentSessionContext}.
      */
     Session getCurrentSession();
     
+    /**
+     * Opens a session, binds it as the current session while the work runs and closes it afterwards.
+     */
+    <R> R runWithSession(Function<Session, R> work);
+    
+    /**
+     * Runs the work in a transaction on a new session, bound as the current session,
+     * and commits it. Failures the dialect classifies as transient, such as deadlocks
+     * and serialization failures, roll back and run the work again with the default
+     * {@link RetryPolicy}. The work must therefore be safe to repeat.
+     */
+    <R> R inTransaction(Function<Session, R> work);
+    
+    /**
+     * Same as {@link #inTransaction(Function)}, retrying according to the given policy.
+     */
+    <R> R inTransaction(Function<Session, R> work, RetryPolicy retryPolicy);
+    
+    /**
+     * Same as {@link #inTransaction(Function, RetryPolicy)}, starting every attempt with the given options.
+     */
+    <R> R inTransaction(Function<Session, R> work, TransactionOptions options, RetryPolicy retryPolicy);
+    
     /**
      * Checks if the session factory is closed.
      */
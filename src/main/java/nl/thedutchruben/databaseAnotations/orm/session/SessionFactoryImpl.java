@@ -3,50 +3,286 @@ package nl.thedutchruben.databaseAnotations.orm.session;
 import com.zaxxer.hikari.HikariDataSource;
 import nl.thedutchruben.databaseAnotations.orm.core.Configuration;
 import nl.thedutchruben.databaseAnotations.orm.core.EntityMetadata;
+import nl.thedutchruben.databaseAnotations.orm.core.PartitionManager;
+import nl.thedutchruben.databaseAnotations.orm.core.SchemaAction;
+import nl.thedutchruben.databaseAnotations.orm.core.SchemaGenerator;
 import nl.thedutchruben.databaseAnotations.orm.dialect.Dialect;
+import nl.thedutchruben.databaseAnotations.orm.exception.MappingException;
+import nl.thedutchruben.databaseAnotations.orm.exception.TransactionException;
+import nl.thedutchruben.databaseAnotations.orm.util.ExecutorUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
 
 /**
  * Default implementation of SessionFactory.
  */
 public class SessionFactoryImpl implements SessionFactory {
     
+    private static final Logger logger = LoggerFactory.getLogger(SessionFactoryImpl.class);
+    
     private final DataSource dataSource;
     private final Dialect dialect;
     private final Map<Class<?>, EntityMetadata> entityMetadataMap;
-    private final ThreadLocal<Session> currentSession = new ThreadLocal<>();
+    private final EntityPersister persister;
+    private final int batchSize;
+    private final ConnectionReleaseMode connectionReleaseMode;
+    private final ReplicaRouter replicaRouter;
+    private final ShardRouter shardRouter;
+    private final SessionBulkhead bulkhead;
+    private final AdaptivePoolSizer poolSizer;
+    private final PartitionManager partitionManager;
+    private final SchemaAction schemaAction;
+    private final SessionRegistry sessionRegistry = new SessionRegistry();
+    private final CurrentSessionContext currentSessionContext;
+    private final ConnectionPermits asyncConnectionPermits;
+    private final int writePipelineMaxBatch;
+    private final long writePipelineFlushInterval;
+    private final int writePipelineQueueCapacity;
+    private final boolean singleWriter;
+    private final boolean warmUpValidate;
+    private final int warmUpMappingIterations;
+    private volatile ExecutorService asyncExecutor;
+    private volatile WritePipeline writePipeline;
     private volatile boolean closed = false;
     
     public SessionFactoryImpl(Configuration configuration) {
         this.dataSource = configuration.getDataSource();
         this.dialect = configuration.getDialect();
         this.entityMetadataMap = new ConcurrentHashMap<>();
+        this.persister = new EntityPersister(entityMetadataMap, dialect);
+        this.batchSize = configuration.getBatchSize();
+        this.connectionReleaseMode = ConnectionReleaseMode.parse(configuration.getConnectionReleaseMode());
+        this.replicaRouter = configuration.getReadReplicas().isEmpty() ? null
+            : new ReplicaRouter(configuration.getReadReplicas(),
+                LoadBalancingStrategy.parse(configuration.getReplicaLoadBalancing()));
+        this.shardRouter = configuration.getShards().isEmpty() ? null
+            : new ShardRouter(configuration.getShards(), persister);
+        this.bulkhead = configuration.getBulkheadMaxConcurrent() <= 0 ? null
+            : new SessionBulkhead(configuration.getBulkheadMaxConcurrent(),
+                configuration.getBulkheadMaxQueue(), configuration.getBulkheadMaxWait());
+        this.asyncConnectionPermits = new ConnectionPermits(getAsyncPermitCount());
+        this.writePipelineMaxBatch = configuration.getWritePipelineMaxBatch();
+        this.writePipelineFlushInterval = configuration.getWritePipelineFlushInterval();
+        this.writePipelineQueueCapacity = configuration.getWritePipelineQueueCapacity();
+        this.singleWriter = configuration.isSQLiteSingleWriter();
         
         // Register all entity classes
         for (Class<?> entityClass : configuration.getEntityClasses()) {
             EntityMetadata metadata = new EntityMetadata(entityClass);
             entityMetadataMap.put(entityClass, metadata);
         }
+        
+        this.currentSessionContext = createCurrentSessionContext(configuration.getCurrentSessionContext());
+        this.partitionManager = new PartitionManager(getDatabases(), dialect, entityMetadataMap, Clock.systemDefaultZone());
+        
+        this.poolSizer = createPoolSizer(configuration);
+        
+        // The schema has to be in place before warm-up prepares statements against it
+        this.schemaAction = SchemaAction.parse(configuration.getHbm2ddlAuto());
+        applySchemaAction();
+        
+        this.warmUpValidate = configuration.isWarmUpValidate();
+        this.warmUpMappingIterations = configuration.getWarmUpMappingIterations();
+        if (configuration.isWarmUpEnabled()) {
+            warmUp();
+        }
     }
     
     @Override
     public Session openSession() {
+        return createSession(false);
+    }
+    
+    @Override
+    public Session openReadOnlySession() {
+        return createSession(true);
+    }
+    
+    @Override
+    public StatelessSession openStatelessSession() {
+        return createStatelessSession(true);
+    }
+    
+    /**
+     * Opens a stateless session, optionally bypassing the bulkhead for the factory's own background work.
+     */
+    StatelessSession createStatelessSession(boolean admit) {
+        checkClosed();
+        boolean permit = admit && admit();
+        StatelessSessionImpl session = new StatelessSessionImpl(dataSource, dialect, entityMetadataMap, batchSize);
+        session.setShardRouter(shardRouter);
+        sessionRegistry.register(session);
+        session.setCloseCallback(() -> {
+            sessionRegistry.unregister(session);
+            if (permit) {
+                bulkhead.release();
+            }
+        });
+        return session;
+    }
+    
+    @Override
+    public AsyncSession openAsyncSession() {
+        return openAsyncSession(getAsyncExecutor());
+    }
+    
+    @Override
+    public AsyncSession openAsyncSession(Executor executor) {
+        checkClosed();
+        return new AsyncSessionImpl(this, executor, asyncConnectionPermits);
+    }
+    
+    @Override
+    public <T> ParallelScan<T> parallelScan(Class<T> entityClass) {
+        checkClosed();
+        if (isSharded(entityClass)) {
+            throw new UnsupportedOperationException("Parallel scans are not supported for sharded entity "
+                + entityClass.getSimpleName());
+        }
+        return new ParallelScan<>(this, entityClass, persister.getEntityMetadata(entityClass), dialect);
+    }
+    
+    @Override
+    public WritePipeline getWritePipeline() {
+        WritePipeline pipeline = writePipeline;
+        if (pipeline == null) {
+            synchronized (this) {
+                checkClosed();
+                pipeline = writePipeline;
+                if (pipeline == null) {
+                    pipeline = new WritePipeline(this, writePipelineMaxBatch,
+                        writePipelineFlushInterval, writePipelineQueueCapacity);
+                    writePipeline = pipeline;
+                }
+            }
+        }
+        return pipeline;
+    }
+    
+    /**
+     * Opens pooled connections up to the pool's minimum idle size and prepares every entity's
+     * CRUD statements on them, then optionally maps sample rows in a loop to warm up the JIT.
+     * Runs from the constructor when orm.warmup.enabled is set; call it directly when the
+     * schema is created after the factory.
+     *
+     * @throws MappingException if orm.warmup.validate is set and a statement does not match the schema
+     */
+    public void warmUp() {
         checkClosed();
-        return new SessionImpl(dataSource, dialect, entityMetadataMap);
+        new WarmUp(this, dialect, warmUpValidate, warmUpMappingIterations).run();
+    }
+    
+    private void applySchemaAction() {
+        if (schemaAction == SchemaAction.NONE) {
+            return;
+        }
+        for (SchemaGenerator generator : getSchemaGenerators()) {
+            switch (schemaAction) {
+                case CREATE:
+                case CREATE_DROP:
+                    generator.recreateSchema();
+                    break;
+                case UPDATE:
+                    generator.updateSchema();
+                    break;
+                case VALIDATE:
+                    generator.validateSchema();
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * Gets a schema generator for the main data source and one per shard, which hold the same tables.
+     */
+    private List<SchemaGenerator> getSchemaGenerators() {
+        List<SchemaGenerator> generators = new ArrayList<>();
+        for (DataSource database : getDatabases()) {
+            generators.add(new SchemaGenerator(database, dialect, entityMetadataMap));
+        }
+        return generators;
+    }
+    
+    /**
+     * Gets the main data source followed by the shards.
+     */
+    private List<DataSource> getDatabases() {
+        List<DataSource> databases = new ArrayList<>();
+        databases.add(dataSource);
+        if (shardRouter != null) {
+            databases.addAll(shardRouter.getShards());
+        }
+        return databases;
+    }
+    
+    @Override
+    public PartitionManager getPartitionManager() {
+        checkClosed();
+        return partitionManager;
     }
     
     @Override
     public Session getCurrentSession() {
         checkClosed();
-        Session session = currentSession.get();
-        if (session == null || !session.isOpen()) {
-            session = openSession();
-            currentSession.set(session);
+        return currentSessionContext.currentSession();
+    }
+    
+    @Override
+    public <R> R runWithSession(Function<Session, R> work) {
+        try (Session session = openSession()) {
+            return currentSessionContext.callWithSession(session, () -> work.apply(session));
+        }
+    }
+    
+    @Override
+    public <R> R inTransaction(Function<Session, R> work) {
+        return inTransaction(work, RetryPolicy.defaults());
+    }
+    
+    @Override
+    public <R> R inTransaction(Function<Session, R> work, RetryPolicy retryPolicy) {
+        return inTransaction(work, TransactionOptions.defaults(), retryPolicy);
+    }
+    
+    @Override
+    public <R> R inTransaction(Function<Session, R> work, TransactionOptions options, RetryPolicy retryPolicy) {
+        for (int attempt = 1; ; attempt++) {
+            try (Session session = openSession()) {
+                Transaction tx = session.beginTransaction(options);
+                try {
+                    R result = currentSessionContext.callWithSession(session, () -> work.apply(session));
+                    tx.commit();
+                    return result;
+                } catch (RuntimeException e) {
+                    rollbackQuietly(tx);
+                    if (attempt >= retryPolicy.getMaxAttempts() || !isRetryable(e)) {
+                        throw e;
+                    }
+                    logger.warn("Transaction attempt {} of {} failed, retrying: {}",
+                        attempt, retryPolicy.getMaxAttempts(), e.getMessage());
+                }
+            }
+            
+            try {
+                Thread.sleep(retryPolicy.getBackoff(attempt).toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TransactionException("Interrupted while waiting to retry transaction", e);
+            }
         }
-        return session;
     }
     
     @Override
@@ -57,20 +293,150 @@ public class SessionFactoryImpl implements SessionFactory {
     @Override
     public void close() {
         if (!closed) {
+            // Write the queued rows while sessions can still be opened
+            synchronized (this) {
+                if (writePipeline != null) {
+                    writePipeline.close();
+                }
+            }
             closed = true;
             
-            // Close current sessions
-            Session session = currentSession.get();
-            if (session != null && session.isOpen()) {
-                session.close();
+            // Close sessions left open by any thread
+            currentSessionContext.unbind();
+            sessionRegistry.closeAll();
+            
+            if (asyncExecutor != null) {
+                asyncExecutor.shutdown();
+            }
+            
+            if (poolSizer != null) {
+                poolSizer.close();
+            }
+            
+            if (schemaAction == SchemaAction.CREATE_DROP) {
+                for (SchemaGenerator generator : getSchemaGenerators()) {
+                    try {
+                        generator.dropSchema();
+                    } catch (RuntimeException e) {
+                        logger.warn("Failed to drop schema", e);
+                    }
+                }
             }
-            currentSession.remove();
             
             // Close data source if it's HikariCP
             if (dataSource instanceof HikariDataSource) {
                 ((HikariDataSource) dataSource).close();
             }
+            if (replicaRouter != null) {
+                replicaRouter.close();
+            }
+            if (shardRouter != null) {
+                shardRouter.close();
+            }
+        }
+    }
+    
+    private boolean isRetryable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException && dialect.isRetryable((SQLException) cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void rollbackQuietly(Transaction tx) {
+        if (tx.isActive()) {
+            try {
+                tx.rollback();
+            } catch (RuntimeException e) {
+                logger.warn("Failed to roll back transaction", e);
+            }
+        }
+    }
+    
+    private Session createSession(boolean readOnly) {
+        checkClosed();
+        boolean permit = admit();
+        SessionImpl session = new SessionImpl(dataSource, dialect, entityMetadataMap, connectionReleaseMode);
+        session.setReplicaRouter(replicaRouter);
+        session.setShardRouter(shardRouter);
+        session.setReadOnly(readOnly);
+        if (singleWriter) {
+            session.setWritePipeline(this::getWritePipeline);
+        }
+        sessionRegistry.register(session);
+        session.setCloseCallback(() -> {
+            sessionRegistry.unregister(session);
+            if (permit) {
+                bulkhead.release();
+            }
+        });
+        return session;
+    }
+    
+    /**
+     * Waits for a bulkhead permit, if a bulkhead is configured.
+     *
+     * @return whether a permit was taken and must be released when the session closes
+     */
+    private boolean admit() {
+        if (bulkhead == null) {
+            return false;
+        }
+        bulkhead.acquire();
+        return true;
+    }
+    
+    private AdaptivePoolSizer createPoolSizer(Configuration configuration) {
+        if (!configuration.isPoolAdaptiveEnabled()) {
+            return null;
+        }
+        if (configuration.isSQLiteSingleWriter()) {
+            logger.warn("Adaptive pool sizing does not apply to the single SQLite writer, ignoring it");
+            return null;
+        }
+        if (!(dataSource instanceof HikariDataSource) || configuration.getPoolMetrics() == null) {
+            logger.warn("Adaptive pool sizing needs the pool created by Configuration.database(), ignoring it");
+            return null;
+        }
+        AdaptivePoolSizer sizer = new AdaptivePoolSizer((HikariDataSource) dataSource, configuration.getPoolMetrics(),
+            configuration.getPoolAdaptiveMinSize(), configuration.getPoolAdaptiveMaxSize(),
+            configuration.getPoolAdaptiveInterval(), configuration.getPoolAdaptiveTargetWait());
+        sizer.setResizeListener(size -> asyncConnectionPermits.resize(getAsyncPermitCount()));
+        sizer.start();
+        return sizer;
+    }
+    
+    private CurrentSessionContext createCurrentSessionContext(String name) {
+        switch (name) {
+            case "thread":
+                return new ThreadLocalSessionContext(this);
+            case "scoped":
+                return new ScopedSessionContext(this);
+            default:
+                try {
+                    return (CurrentSessionContext) Class.forName(name)
+                        .getConstructor(SessionFactory.class)
+                        .newInstance(this);
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    throw new IllegalArgumentException("Invalid current session context: " + name, e);
+                }
+        }
+    }
+    
+    private ExecutorService getAsyncExecutor() {
+        ExecutorService executor = asyncExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = asyncExecutor;
+                if (executor == null) {
+                    executor = ExecutorUtils.newVirtualThreadExecutor("orm-async");
+                    asyncExecutor = executor;
+                }
+            }
         }
+        return executor;
     }
     
     private void checkClosed() {
@@ -82,4 +448,83 @@ public class SessionFactoryImpl implements SessionFactory {
     public Map<Class<?>, EntityMetadata> getEntityMetadataMap() {
         return entityMetadataMap;
     }
+    
+    public SessionRegistry getSessionRegistry() {
+        return sessionRegistry;
+    }
+    
+    public CurrentSessionContext getCurrentSessionContext() {
+        return currentSessionContext;
+    }
+    
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+    
+    /**
+     * Gets the shard router, or null when no shards are configured.
+     */
+    public ShardRouter getShardRouter() {
+        return shardRouter;
+    }
+    
+    /**
+     * Gets the session bulkhead, or null when orm.bulkhead.max_concurrent is not set.
+     */
+    public SessionBulkhead getBulkhead() {
+        return bulkhead;
+    }
+    
+    /**
+     * Gets the adaptive pool sizer, or null when orm.pool.adaptive.enabled is not set.
+     */
+    public AdaptivePoolSizer getPoolSizer() {
+        return poolSizer;
+    }
+    
+    /**
+     * Gets the read replica router, or null when no replicas are configured.
+     */
+    public ReplicaRouter getReplicaRouter() {
+        return replicaRouter;
+    }
+    
+    /**
+     * Gets the maximum number of pooled connections, or the processor count for non-HikariCP data sources.
+     */
+    public int getMaximumPoolSize() {
+        return getMaximumPoolSize(dataSource);
+    }
+    
+    private static int getMaximumPoolSize(DataSource pool) {
+        if (pool instanceof HikariDataSource) {
+            return ((HikariDataSource) pool).getMaximumPoolSize();
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+    
+    /**
+     * Gets the number of connections async sessions may hold at once: those of the main pool
+     * and of the read replica pools, which serve their reads.
+     */
+    private int getAsyncPermitCount() {
+        int permits = getMaximumPoolSize();
+        if (replicaRouter != null) {
+            for (DataSource replica : replicaRouter.getReplicas()) {
+                permits += getMaximumPoolSize(replica);
+            }
+        }
+        return permits;
+    }
+    
+    /**
+     * Checks whether the entity lives on the shards rather than in the main database.
+     */
+    boolean isSharded(Class<?> entityClass) {
+        return shardRouter != null && persister.getEntityMetadata(entityClass).isSharded();
+    }
+    
+    EntityPersister getPersister() {
+        return persister;
+    }
 }
@@ -5,18 +5,42 @@ import nl.thedutchruben.databaseAnotations.orm.core.EntityMetadata;
 import nl.thedutchruben.databaseAnotations.orm.core.RelationshipMetadata;
 import nl.thedutchruben.databaseAnotations.orm.core.RelationshipType;
 import nl.thedutchruben.databaseAnotations.orm.dialect.Dialect;
+import nl.thedutchruben.databaseAnotations.orm.exception.MappingException;
+import nl.thedutchruben.databaseAnotations.orm.exception.TransactionException;
+import nl.thedutchruben.databaseAnotations.orm.query.QueryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Default implementation of the Session interface.
+ * The JDBC connection is borrowed from the pool lazily and handed back according to
+ * the configured {@link ConnectionReleaseMode}; while a transaction or a result cursor
+ * is open the connection is always kept.
+ * <p>
+ * When read replicas are configured, reads outside a transaction go to a replica
+ * until the session writes for the first time; from then on the session stays on
+ * the primary so it always sees its own writes.
+ * <p>
+ * Entities with a {@code @ShardKey} are handled by one child session per shard:
+ * single-entity operations go to the shard chosen by the key, while findAll and
+ * queries run on all shards in parallel and merge the results. Shard transactions
+ * are started on first use inside a transaction of this session and committed just
+ * before it; this is not a two-phase commit.
  */
 public class SessionImpl implements Session {
     
@@ -25,33 +49,153 @@ public class SessionImpl implements Session {
     private final DataSource dataSource;
     private final Dialect dialect;
     private final Map<Class<?>, EntityMetadata> entityMetadataMap;
+    private final EntityPersister persister;
+    private final ConnectionReleaseMode releaseMode;
     private final Map<Object, Object> entityCache = new HashMap<>();
     private Connection connection;
+    private Connection replicaConnection;
+    private int connectionUsers;
+    private ReplicaRouter replicaRouter;
+    private boolean readOnly;
+    private boolean pinnedToPrimary;
+    private ShardRouter shardRouter;
+    private SessionImpl[] shardSessions;
+    private SessionImpl parent;
     private TransactionImpl currentTransaction;
     private boolean open = true;
+    private Runnable closeCallback;
+    private Supplier<WritePipeline> writePipeline;
     
     public SessionImpl(DataSource dataSource, Dialect dialect, Map<Class<?>, EntityMetadata> entityMetadataMap) {
+        this(dataSource, dialect, entityMetadataMap, ConnectionReleaseMode.ON_CLOSE);
+    }
+    
+    public SessionImpl(DataSource dataSource, Dialect dialect, Map<Class<?>, EntityMetadata> entityMetadataMap,
+                       ConnectionReleaseMode releaseMode) {
         this.dataSource = dataSource;
         this.dialect = dialect;
         this.entityMetadataMap = entityMetadataMap;
+        this.persister = new EntityPersister(entityMetadataMap, dialect);
+        this.releaseMode = releaseMode;
+    }
+    
+    /**
+     * Sets a callback invoked once when the session is closed.
+     */
+    void setCloseCallback(Runnable closeCallback) {
+        this.closeCallback = closeCallback;
+    }
+    
+    /**
+     * Sends reads outside transactions to the replicas of the router.
+     */
+    void setReplicaRouter(ReplicaRouter replicaRouter) {
+        this.replicaRouter = replicaRouter;
+    }
+    
+    /**
+     * Routes entities with a shard key to the shards of the router.
+     */
+    void setShardRouter(ShardRouter shardRouter) {
+        this.shardRouter = shardRouter;
+    }
+    
+    /**
+     * Sends inserts outside transactions to the write pipeline, so they commit together with
+     * the inserts of other sessions instead of each in a transaction of its own.
+     */
+    void setWritePipeline(Supplier<WritePipeline> writePipeline) {
+        this.writePipeline = writePipeline;
+    }
+    
+    /**
+     * Marks the session as read-only: writes are rejected and, when replicas are
+     * configured, every statement including transactions runs on a replica.
+     */
+    void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
     }
     
     private Connection getConnection() throws SQLException {
         if (connection == null || connection.isClosed()) {
-            connection = dataSource.getConnection();
-            connection.setAutoCommit(currentTransaction == null);
+            boolean onReplica = readOnly && replicaRouter != null;
+            connection = (onReplica ? replicaRouter.nextReplica() : dataSource).getConnection();
+            connection.setAutoCommit(!isTransactionActive());
+            if (readOnly) {
+                connection.setReadOnly(true);
+            }
         }
         return connection;
     }
     
+    private Connection getReplicaConnection() throws SQLException {
+        if (replicaConnection == null || replicaConnection.isClosed()) {
+            replicaConnection = replicaRouter.nextReplica().getConnection();
+            replicaConnection.setAutoCommit(true);
+        }
+        return replicaConnection;
+    }
+    
+    /**
+     * Gets the connection for a statement; every call must be paired with {@link #releaseConnection()}.
+     * Reads are routed to a replica unless a transaction is active or the session has written.
+     */
+    private Connection acquireConnection(boolean read) throws SQLException {
+        boolean useReplica = read && replicaRouter != null && !readOnly && !pinnedToPrimary && !isTransactionActive();
+        Connection conn = useReplica ? getReplicaConnection() : getConnection();
+        connectionUsers++;
+        return conn;
+    }
+    
+    /**
+     * Records a write: rejects it in read-only sessions and pins the session to the primary.
+     */
+    private void markWrite() {
+        if (readOnly) {
+            throw new RuntimeException("Session is read-only");
+        }
+        pinnedToPrimary = true;
+    }
+    
+    /**
+     * Ends a statement started with {@link #acquireConnection(boolean)} and returns the
+     * connection to the pool if the release mode allows it.
+     */
+    private void releaseConnection() {
+        connectionUsers--;
+        if (releaseMode == ConnectionReleaseMode.AFTER_STATEMENT) {
+            releaseIfIdle();
+        }
+    }
+    
+    private void releaseIfIdle() {
+        if (connectionUsers == 0 && !isTransactionActive()) {
+            closeConnections();
+        }
+    }
+    
+    private boolean isTransactionActive() {
+        return currentTransaction != null && currentTransaction.isActive();
+    }
+    
     @Override
     public <T> T save(T entity) {
+        if (isSharded(entity.getClass())) {
+            return shardSession(shardRouter.shardFor(entity)).save(entity);
+        }
+        // A session holding the writer connection would block the pipeline waiting for it
+        if (writePipeline != null && connection == null && !isTransactionActive()) {
+            return saveThroughPipeline(entity);
+        }
+        
         try {
             EntityMetadata metadata = getEntityMetadata(entity.getClass());
-            String sql = buildInsertSql(metadata);
+            String sql = persister.buildInsertSql(metadata);
             
-            try (PreparedStatement stmt = getConnection().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-                setInsertParameters(stmt, entity, metadata);
+            markWrite();
+            Connection conn = acquireConnection(false);
+            try (PreparedStatement stmt = prepare(conn, sql, true)) {
+                persister.setInsertParameters(stmt, entity, metadata);
                 
                 logger.debug("Executing SQL: {}", sql);
                 int result = stmt.executeUpdate();
@@ -62,7 +206,7 @@ public class SessionImpl implements Session {
                     if (pkColumn != null && pkColumn.getGenerationType() != null) {
                         try (ResultSet rs = stmt.getGeneratedKeys()) {
                             if (rs.next()) {
-                                Object generatedId = rs.getObject(1);
+                                Object generatedId = persister.read(rs, 1, pkColumn);
                                 pkColumn.setValue(entity, generatedId);
                             }
                         }
@@ -74,25 +218,52 @@ public class SessionImpl implements Session {
                 }
                 
                 return entity;
+            } finally {
+                releaseConnection();
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed to save entity", e);
         }
     }
     
+    private <T> T saveThroughPipeline(T entity) {
+        EntityMetadata metadata = getEntityMetadata(entity.getClass());
+        markWrite();
+        try {
+            writePipeline.get().submit(entity).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Failed to save entity", e.getCause());
+        }
+        
+        ColumnMetadata pkColumn = metadata.getPrimaryKey();
+        entityCache.put(pkColumn != null ? pkColumn.getValue(entity) : entity, entity);
+        return entity;
+    }
+    
     @Override
     public <T> T update(T entity) {
+        if (isSharded(entity.getClass())) {
+            return shardSession(shardRouter.shardFor(entity)).update(entity);
+        }
+        
         try {
             EntityMetadata metadata = getEntityMetadata(entity.getClass());
-            String sql = buildUpdateSql(metadata);
+            String sql = persister.buildUpdateSql(metadata);
             
-            try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-                setUpdateParameters(stmt, entity, metadata);
+            markWrite();
+            Connection conn = acquireConnection(false);
+            try (PreparedStatement stmt = prepare(conn, sql, false)) {
+                persister.setUpdateParameters(stmt, entity, metadata);
                 
                 logger.debug("Executing SQL: {}", sql);
                 stmt.executeUpdate();
                 
                 return entity;
+            } finally {
+                releaseConnection();
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed to update entity", e);
@@ -101,6 +272,12 @@ public class SessionImpl implements Session {
     
     @Override
     public <T> T saveOrUpdate(T entity) {
+        if (isSharded(entity.getClass())) {
+            return shardSession(shardRouter.shardFor(entity)).saveOrUpdate(entity);
+        }
+        
+        // Decide on the primary, a replica may not have the row yet
+        markWrite();
         EntityMetadata metadata = getEntityMetadata(entity.getClass());
         ColumnMetadata pkColumn = metadata.getPrimaryKey();
         
@@ -116,6 +293,11 @@ public class SessionImpl implements Session {
     
     @Override
     public <T> void delete(T entity) {
+        if (isSharded(entity.getClass())) {
+            shardSession(shardRouter.shardFor(entity)).delete(entity);
+            return;
+        }
+        
         try {
             EntityMetadata metadata = getEntityMetadata(entity.getClass());
             ColumnMetadata pkColumn = metadata.getPrimaryKey();
@@ -124,17 +306,21 @@ public class SessionImpl implements Session {
                 throw new RuntimeException("Cannot delete entity without primary key");
             }
             
-            String sql = buildDeleteSql(metadata);
+            String sql = persister.buildDeleteSql(metadata);
             
-            try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            markWrite();
+            Connection conn = acquireConnection(false);
+            try (PreparedStatement stmt = prepare(conn, sql, false)) {
                 Object id = pkColumn.getValue(entity);
-                stmt.setObject(1, id);
+                persister.bind(stmt, 1, pkColumn, id);
                 
                 logger.debug("Executing SQL: {}", sql);
                 stmt.executeUpdate();
                 
                 // Remove from cache
                 entityCache.remove(id);
+            } finally {
+                releaseConnection();
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed to delete entity", e);
@@ -144,6 +330,19 @@ public class SessionImpl implements Session {
     @Override
     @SuppressWarnings("unchecked")
     public <T> T findById(Class<T> entityClass, Object id) {
+        if (isSharded(entityClass)) {
+            int shard = shardRouter.shardForId(entityClass, id);
+            if (shard >= 0) {
+                return shardSession(shard).findById(entityClass, id);
+            }
+            for (T found : scatter(session -> session.findById(entityClass, id))) {
+                if (found != null) {
+                    return found;
+                }
+            }
+            return null;
+        }
+        
         // Check cache first
         Object cached = entityCache.get(id);
         if (cached != null && entityClass.isInstance(cached)) {
@@ -152,10 +351,11 @@ public class SessionImpl implements Session {
         
         try {
             EntityMetadata metadata = getEntityMetadata(entityClass);
-            String sql = buildSelectByIdSql(metadata);
+            String sql = persister.buildSelectByIdSql(metadata);
             
-            try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-                stmt.setObject(1, id);
+            Connection conn = acquireConnection(true);
+            try (PreparedStatement stmt = prepare(conn, sql, false)) {
+                persister.bind(stmt, 1, metadata.getPrimaryKey(), id);
                 
                 logger.debug("Executing SQL: {}", sql);
                 try (ResultSet rs = stmt.executeQuery()) {
@@ -165,6 +365,8 @@ public class SessionImpl implements Session {
                         return entity;
                     }
                 }
+            } finally {
+                releaseConnection();
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed to find entity by id", e);
@@ -175,41 +377,148 @@ public class SessionImpl implements Session {
     
     @Override
     public <T> List<T> findAll(Class<T> entityClass) {
+        if (isSharded(entityClass)) {
+            return concat(scatter(session -> session.findAll(entityClass)));
+        }
+        
         try {
             EntityMetadata metadata = getEntityMetadata(entityClass);
-            String sql = buildSelectAllSql(metadata);
-            
-            try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
-                logger.debug("Executing SQL: {}", sql);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    List<T> results = new ArrayList<>();
-                    while (rs.next()) {
-                        T entity = mapResultSetToEntity(rs, entityClass, metadata);
-                        results.add(entity);
-                        
-                        // Cache entity if it has a primary key
-                        ColumnMetadata pkColumn = metadata.getPrimaryKey();
-                        if (pkColumn != null) {
-                            Object id = pkColumn.getValue(entity);
-                            if (id != null) {
-                                entityCache.put(id, entity);
-                            }
-                        }
-                    }
-                    return results;
+            return list(entityClass, persister.buildSelectAllSql(metadata));
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to find all entities", e);
+        }
+    }
+    
+    @Override
+    public <T> long forEachChunk(Class<T> entityClass, int chunkSize, Consumer<List<T>> action) {
+        return forEachChunk(entityClass, chunkSize, action, null);
+    }
+    
+    @Override
+    public <T> long forEachChunk(Class<T> entityClass, int chunkSize, Consumer<List<T>> action,
+                                 ChunkProgressListener progressListener) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        if (isTransactionActive()) {
+            throw new RuntimeException("Cannot process chunks while a transaction is active");
+        }
+        if (isSharded(entityClass)) {
+            return forEachChunkPerShard(entityClass, chunkSize, action, progressListener);
+        }
+        
+        EntityMetadata metadata = getEntityMetadata(entityClass);
+        ColumnMetadata pkColumn = metadata.getPrimaryKey();
+        if (pkColumn == null) {
+            throw MappingException.noPrimaryKey(entityClass);
+        }
+        
+        // Keyset pagination: every chunk seeks past the last key instead of counting an offset
+        String selectSql = persister.buildSelectAllSql(metadata);
+        String orderBy = " ORDER BY " + pkColumn.getColumnName();
+        String firstChunkSql = dialect.getLimitString(selectSql + orderBy, chunkSize);
+        String nextChunkSql = dialect.getLimitString(
+            selectSql + " WHERE " + pkColumn.getColumnName() + " > ?" + orderBy, chunkSize);
+        
+        Object lastKey = null;
+        long processed = 0;
+        int chunkNumber = 0;
+        
+        while (true) {
+            Transaction tx = beginTransaction();
+            int loaded;
+            try {
+                List<T> chunk = lastKey == null
+                    ? list(entityClass, firstChunkSql)
+                    : list(entityClass, nextChunkSql, lastKey);
+                loaded = chunk.size();
+                
+                if (loaded > 0) {
+                    // Capture the key before the action runs, it may modify or delete the entities
+                    lastKey = pkColumn.getValue(chunk.get(loaded - 1));
+                    action.accept(chunk);
+                    flush();
                 }
+                tx.commit();
+            } catch (SQLException e) {
+                rollbackQuietly(tx);
+                throw new RuntimeException("Failed to load chunk " + (chunkNumber + 1), e);
+            } catch (RuntimeException e) {
+                rollbackQuietly(tx);
+                throw e;
+            } finally {
+                clear();
             }
+            
+            if (loaded == 0) {
+                break;
+            }
+            
+            processed += loaded;
+            chunkNumber++;
+            logger.debug("Processed chunk {} of {} ({} rows so far)", chunkNumber, entityClass.getSimpleName(), processed);
+            if (progressListener != null) {
+                progressListener.onChunkProcessed(chunkNumber, loaded, processed);
+            }
+            
+            if (loaded < chunkSize) {
+                break;
+            }
+        }
+        
+        return processed;
+    }
+    
+    @Override
+    public <T> List<T> claimBatch(Class<T> entityClass, int batchSize) {
+        return claimBatch(entityClass, batchSize, null);
+    }
+    
+    @Override
+    public <T> List<T> claimBatch(Class<T> entityClass, int batchSize, String condition, Object... parameters) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        if (!isTransactionActive()) {
+            throw TransactionException.notActive();
+        }
+        if (isSharded(entityClass)) {
+            throw new UnsupportedOperationException("Claiming rows is not supported for sharded entity "
+                + entityClass.getSimpleName());
+        }
+        
+        EntityMetadata metadata = getEntityMetadata(entityClass);
+        ColumnMetadata pkColumn = metadata.getPrimaryKey();
+        if (pkColumn == null) {
+            throw MappingException.noPrimaryKey(entityClass);
+        }
+        
+        String sql = persister.buildSelectAllSql(metadata);
+        if (condition != null) {
+            sql += " WHERE " + condition;
+        }
+        sql = dialect.getLimitString(sql + " ORDER BY " + pkColumn.getColumnName(), batchSize)
+            + dialect.getForUpdateString(true, false);
+        
+        try {
+            return list(entityClass, sql, parameters);
         } catch (SQLException e) {
-            throw new RuntimeException("Failed to find all entities", e);
+            throw new RuntimeException("Failed to claim " + entityClass.getSimpleName() + " rows", e);
         }
     }
     
     @Override
-    public <T> List<T> createQuery(String sql, Class<T> resultClass) {
+    public <T> List<T> createQuery(String sql, Class<T> resultClass, Object... parameters) {
+        if (isSharded(resultClass)) {
+            return concat(scatter(session -> session.createQuery(sql, resultClass, parameters)));
+        }
+        
         try {
             EntityMetadata metadata = getEntityMetadata(resultClass);
             
-            try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            Connection conn = acquireConnection(true);
+            try (PreparedStatement stmt = prepare(conn, sql, false)) {
+                persister.bindParameters(stmt, parameters);
                 logger.debug("Executing SQL: {}", sql);
                 try (ResultSet rs = stmt.executeQuery()) {
                     List<T> results = new ArrayList<>();
@@ -219,18 +528,145 @@ public class SessionImpl implements Session {
                     }
                     return results;
                 }
+            } finally {
+                releaseConnection();
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed to execute query", e);
         }
     }
     
+    @Override
+    public <T> QueryBuilder<T> createQueryBuilder(Class<T> entityClass) {
+        return new QueryBuilder<>(entityClass, getEntityMetadata(entityClass), dialect);
+    }
+    
+    @Override
+    public <T> List<T> createQuery(QueryBuilder<T> query) {
+        Class<T> entityClass = query.getEntityClass();
+        Object[] parameters = query.getConditionValues().toArray();
+        
+        try {
+            if (!isSharded(entityClass)) {
+                return list(entityClass, query.buildQuery(), parameters);
+            }
+            
+            // Every shard returns its first offset + limit rows; the merged list is cut afterwards
+            Integer limit = query.getLimit();
+            int offset = limit != null && query.getOffset() != null ? query.getOffset() : 0;
+            String sql = query.buildQuery(limit != null ? offset + limit : null, null);
+            
+            List<T> results = concat(scatter(session -> {
+                try {
+                    return session.list(entityClass, sql, parameters);
+                } catch (SQLException e) {
+                    throw new RuntimeException("Failed to execute query on shard", e);
+                }
+            }));
+            
+            // The shard lists are already ordered, so the sort only merges sorted runs
+            if (!query.getOrderBy().isEmpty()) {
+                results.sort(orderComparator(query.getMetadata(), query.getOrderBy()));
+            }
+            if (limit != null) {
+                int from = Math.min(offset, results.size());
+                results = new ArrayList<>(results.subList(from, Math.min(from + limit, results.size())));
+            }
+            return results;
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to execute query", e);
+        }
+    }
+    
+    @Override
+    public <T> Flow.Publisher<T> createQueryPublisher(String sql, Class<T> resultClass) {
+        return createQueryPublisher(sql, resultClass, null);
+    }
+    
+    @Override
+    public <T> Flow.Publisher<T> createQueryPublisher(String sql, Class<T> resultClass, Executor executor,
+                                                      Object... parameters) {
+        if (isSharded(resultClass)) {
+            throw new UnsupportedOperationException("Query publishers are not supported for sharded entity "
+                + resultClass.getSimpleName());
+        }
+        EntityMetadata metadata = getEntityMetadata(resultClass);
+        AtomicReference<Connection> cursorConnection = new AtomicReference<>();
+        return new ResultSetPublisher<>(sql,
+            query -> {
+                // Drivers only honour the fetch size in a transaction. Outside the session's own, the cursor
+                // gets a connection of its own so the session's writes do not join the cursor's transaction.
+                Connection conn;
+                if (isTransactionActive()) {
+                    conn = acquireConnection(true);
+                } else {
+                    conn = openCursorConnection();
+                    cursorConnection.set(conn);
+                }
+                try {
+                    PreparedStatement stmt = prepare(conn, query, false);
+                    try {
+                        persister.bindParameters(stmt, parameters);
+                    } catch (SQLException e) {
+                        stmt.close();
+                        throw e;
+                    }
+                    return stmt;
+                } catch (SQLException e) {
+                    endCursor(cursorConnection.getAndSet(null));
+                    throw e;
+                }
+            },
+            () -> endCursor(cursorConnection.getAndSet(null)),
+            rs -> mapResultSetToEntity(rs, resultClass, metadata),
+            executor);
+    }
+    
+    /**
+     * Borrows a connection for reading a cursor outside a transaction, from the pool the session reads from.
+     */
+    private Connection openCursorConnection() throws SQLException {
+        boolean useReplica = replicaRouter != null && (readOnly || !pinnedToPrimary);
+        Connection conn = (useReplica ? replicaRouter.nextReplica() : dataSource).getConnection();
+        try {
+            conn.setAutoCommit(false);
+            if (readOnly) {
+                conn.setReadOnly(true);
+            }
+            return conn;
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Ends a cursor: returns its own connection to the pool, or releases the session's connection
+     * when the cursor was read in the session's transaction.
+     */
+    private void endCursor(Connection cursorConnection) {
+        if (cursorConnection == null) {
+            releaseConnection();
+            return;
+        }
+        try (Connection conn = cursorConnection) {
+            conn.rollback();
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            logger.warn("Failed to close the connection of a cursor", e);
+        }
+    }
+    
     @Override
     public int executeUpdate(String sql) {
         try {
-            try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
+            markWrite();
+            Connection conn = acquireConnection(false);
+            try (PreparedStatement stmt = prepare(conn, sql, false)) {
                 logger.debug("Executing SQL: {}", sql);
                 return stmt.executeUpdate();
+            } finally {
+                releaseConnection();
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed to execute update", e);
@@ -239,20 +675,45 @@ public class SessionImpl implements Session {
     
     @Override
     public Transaction beginTransaction() {
-        if (currentTransaction != null && currentTransaction.isActive()) {
+        return beginTransaction(TransactionOptions.defaults());
+    }
+    
+    @Override
+    public Transaction beginTransaction(TransactionOptions options) {
+        if (isTransactionActive()) {
             throw new RuntimeException("Transaction already active");
         }
         
         try {
-            Connection conn = getConnection();
-            conn.setAutoCommit(false);
-            currentTransaction = new TransactionImpl(conn);
+            currentTransaction = TransactionImpl.begin(getConnection(), options);
+            currentTransaction.registerSynchronization(new TransactionImpl.Synchronization() {
+                @Override
+                public void afterSavepointRollback(Savepoint savepoint) {
+                    // Cached entities may hold state that was just undone
+                    clear();
+                }
+                
+                @Override
+                public void afterCompletion(boolean committed) {
+                    if (releaseMode != ConnectionReleaseMode.ON_CLOSE) {
+                        releaseIfIdle();
+                    }
+                }
+            });
             return currentTransaction;
         } catch (SQLException e) {
             throw new RuntimeException("Failed to begin transaction", e);
         }
     }
     
+    @Override
+    public Transaction beginNestedTransaction() {
+        if (!isTransactionActive()) {
+            return beginTransaction();
+        }
+        return currentTransaction.beginNested();
+    }
+    
     @Override
     public Transaction getTransaction() {
         return currentTransaction;
@@ -267,6 +728,13 @@ public class SessionImpl implements Session {
     @Override
     public void clear() {
         entityCache.clear();
+        if (shardSessions != null) {
+            for (SessionImpl shardSession : shardSessions) {
+                if (shardSession != null) {
+                    shardSession.clear();
+                }
+            }
+        }
     }
     
     @Override
@@ -280,15 +748,23 @@ public class SessionImpl implements Session {
             open = false;
             clear();
             
-            if (currentTransaction != null && currentTransaction.isActive()) {
-                currentTransaction.rollback();
-            }
-            
-            if (connection != null) {
-                try {
-                    connection.close();
-                } catch (SQLException e) {
-                    logger.warn("Error closing connection", e);
+            try {
+                if (isTransactionActive()) {
+                    currentTransaction.rollback();
+                }
+            } finally {
+                closeConnections();
+                if (shardSessions != null) {
+                    for (SessionImpl shardSession : shardSessions) {
+                        if (shardSession != null) {
+                            shardSession.close();
+                        }
+                    }
+                }
+                
+                // Runs even if the rollback failed, so the session's bulkhead permit is returned
+                if (closeCallback != null) {
+                    closeCallback.run();
                 }
             }
         }
@@ -296,267 +772,225 @@ public class SessionImpl implements Session {
     
     // Helper methods
     
-    private EntityMetadata getEntityMetadata(Class<?> entityClass) {
-        EntityMetadata metadata = entityMetadataMap.get(entityClass);
-        if (metadata == null) {
-            throw new RuntimeException("Entity class not registered: " + entityClass.getName());
-        }
-        return metadata;
-    }
-    
-    private String buildInsertSql(EntityMetadata metadata) {
-        StringBuilder sql = new StringBuilder();
-        StringBuilder values = new StringBuilder();
-        
-        sql.append("INSERT INTO ").append(metadata.getFullTableName()).append(" (");
-        values.append("VALUES (");
+    /**
+     * Executes a parameterized select for an entity class and caches the loaded entities.
+     */
+    <T> List<T> list(Class<T> entityClass, String sql, Object... parameters) throws SQLException {
+        EntityMetadata metadata = getEntityMetadata(entityClass);
+        ColumnMetadata pkColumn = metadata.getPrimaryKey();
         
-        boolean first = true;
-        // Add basic columns
-        for (ColumnMetadata column : metadata.getColumns().values()) {
-            if (column.isPrimaryKey() && column.getGenerationType() != null) {
-                continue; // Skip auto-generated primary keys
-            }
-            
-            if (!first) {
-                sql.append(", ");
-                values.append(", ");
-            }
+        Connection conn = acquireConnection(true);
+        try (PreparedStatement stmt = prepare(conn, sql, false)) {
+            persister.bindParameters(stmt, parameters);
             
-            sql.append(column.getColumnName());
-            values.append("?");
-            first = false;
-        }
-        
-        // Add foreign key columns for ManyToOne relationships
-        for (RelationshipMetadata relationship : metadata.getRelationships().values()) {
-            if (relationship.getRelationshipType() == RelationshipType.MANY_TO_ONE) {
-                String joinColumn = relationship.getJoinColumn();
-                if (joinColumn != null && !joinColumn.isEmpty()) {
-                    if (!first) {
-                        sql.append(", ");
-                        values.append(", ");
-                    }
+            logger.debug("Executing SQL: {}", sql);
+            try (ResultSet rs = stmt.executeQuery()) {
+                List<T> results = new ArrayList<>();
+                while (rs.next()) {
+                    T entity = mapResultSetToEntity(rs, entityClass, metadata);
+                    results.add(entity);
                     
-                    sql.append(joinColumn);
-                    values.append("?");
-                    first = false;
+                    // Cache entity if it has a primary key
+                    if (pkColumn != null) {
+                        Object id = pkColumn.getValue(entity);
+                        if (id != null) {
+                            entityCache.put(id, entity);
+                        }
+                    }
                 }
+                return results;
             }
+        } finally {
+            releaseConnection();
         }
-        
-        sql.append(") ").append(values).append(")");
-        return sql.toString();
     }
     
-    private String buildUpdateSql(EntityMetadata metadata) {
-        StringBuilder sql = new StringBuilder();
-        sql.append("UPDATE ").append(metadata.getFullTableName()).append(" SET ");
-        
-        boolean first = true;
-        // Add basic columns
-        for (ColumnMetadata column : metadata.getColumns().values()) {
-            if (column.isPrimaryKey()) {
-                continue; // Skip primary key in SET clause
-            }
-            
-            if (!first) {
-                sql.append(", ");
+    /**
+     * Prepares a statement, applying the statement timeout of the active transaction.
+     */
+    private PreparedStatement prepare(Connection conn, String sql, boolean returnGeneratedKeys) throws SQLException {
+        PreparedStatement stmt = returnGeneratedKeys
+            ? conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+            : conn.prepareStatement(sql);
+        if (isTransactionActive()) {
+            int timeout = currentTransaction.getOptions().getStatementTimeoutSeconds();
+            if (timeout > 0) {
+                stmt.setQueryTimeout(timeout);
             }
-            
-            sql.append(column.getColumnName()).append(" = ?");
-            first = false;
         }
-        
-        // Add foreign key columns for ManyToOne relationships
-        for (RelationshipMetadata relationship : metadata.getRelationships().values()) {
-            if (relationship.getRelationshipType() == RelationshipType.MANY_TO_ONE) {
-                String joinColumn = relationship.getJoinColumn();
-                if (joinColumn != null && !joinColumn.isEmpty()) {
-                    if (!first) {
-                        sql.append(", ");
-                    }
-                    
-                    sql.append(joinColumn).append(" = ?");
-                    first = false;
-                }
-            }
-        }
-        
-        ColumnMetadata pkColumn = metadata.getPrimaryKey();
-        if (pkColumn != null) {
-            sql.append(" WHERE ").append(pkColumn.getColumnName()).append(" = ?");
-        }
-        
-        return sql.toString();
+        return stmt;
     }
     
-    private String buildDeleteSql(EntityMetadata metadata) {
-        ColumnMetadata pkColumn = metadata.getPrimaryKey();
-        return "DELETE FROM " + metadata.getFullTableName() + 
-               " WHERE " + pkColumn.getColumnName() + " = ?";
+    private boolean isSharded(Class<?> entityClass) {
+        return shardRouter != null && getEntityMetadata(entityClass).isSharded();
     }
     
-    private String buildSelectByIdSql(EntityMetadata metadata) {
-        StringBuilder sql = new StringBuilder();
-        sql.append("SELECT ");
-        
-        boolean first = true;
-        // Add basic columns
-        for (ColumnMetadata column : metadata.getColumns().values()) {
-            if (!first) {
-                sql.append(", ");
-            }
-            sql.append(column.getColumnName());
-            first = false;
+    /**
+     * Gets the child session of a shard, enlisting it in the active transaction.
+     */
+    private SessionImpl shardSession(int index) {
+        if (shardSessions == null) {
+            shardSessions = new SessionImpl[shardRouter.getShardCount()];
         }
-        
-        // Add foreign key columns for ManyToOne relationships
-        for (RelationshipMetadata relationship : metadata.getRelationships().values()) {
-            if (relationship.getRelationshipType() == RelationshipType.MANY_TO_ONE) {
-                String joinColumn = relationship.getJoinColumn();
-                if (joinColumn != null && !joinColumn.isEmpty()) {
-                    if (!first) {
-                        sql.append(", ");
-                    }
-                    sql.append(joinColumn);
-                    first = false;
-                }
-            }
+        SessionImpl shardSession = shardSessions[index];
+        if (shardSession == null) {
+            shardSession = new SessionImpl(shardRouter.getShard(index), dialect, entityMetadataMap, releaseMode);
+            shardSession.setReadOnly(readOnly);
+            shardSession.parent = this;
+            shardSessions[index] = shardSession;
         }
-        
-        sql.append(" FROM ").append(metadata.getFullTableName());
-        
-        ColumnMetadata pkColumn = metadata.getPrimaryKey();
-        if (pkColumn != null) {
-            sql.append(" WHERE ").append(pkColumn.getColumnName()).append(" = ?");
+        if (isTransactionActive() && !shardSession.isTransactionActive()) {
+            joinTransaction(shardSession);
         }
-        
-        return sql.toString();
+        return shardSession;
     }
     
-    private String buildSelectAllSql(EntityMetadata metadata) {
-        StringBuilder sql = new StringBuilder();
-        sql.append("SELECT ");
-        
-        boolean first = true;
-        // Add basic columns
-        for (ColumnMetadata column : metadata.getColumns().values()) {
-            if (!first) {
-                sql.append(", ");
+    private void joinTransaction(SessionImpl shardSession) {
+        Transaction shardTransaction = shardSession.beginTransaction(currentTransaction.getOptions());
+        currentTransaction.registerSynchronization(new TransactionImpl.Synchronization() {
+            // Savepoints of this session's transaction mapped to the shard's savepoint taken at the same time
+            private final Map<Savepoint, Savepoint> savepoints = new HashMap<>();
+            
+            @Override
+            public void afterSavepoint(Savepoint savepoint) {
+                savepoints.put(savepoint, shardTransaction.savepoint());
             }
-            sql.append(column.getColumnName());
-            first = false;
-        }
-        
-        // Add foreign key columns for ManyToOne relationships
-        for (RelationshipMetadata relationship : metadata.getRelationships().values()) {
-            if (relationship.getRelationshipType() == RelationshipType.MANY_TO_ONE) {
-                String joinColumn = relationship.getJoinColumn();
-                if (joinColumn != null && !joinColumn.isEmpty()) {
-                    if (!first) {
-                        sql.append(", ");
-                    }
-                    sql.append(joinColumn);
-                    first = false;
+            
+            @Override
+            public void afterSavepointRollback(Savepoint savepoint) {
+                Savepoint shardSavepoint = savepoints.get(savepoint);
+                if (shardSavepoint != null) {
+                    shardTransaction.rollbackTo(shardSavepoint);
+                    return;
                 }
+                // The savepoint is older than the shard's transaction, so all of the shard's work comes after it
+                try {
+                    shardSession.getConnection().rollback();
+                } catch (SQLException e) {
+                    throw new TransactionException("Failed to roll back shard to savepoint", e);
+                }
+            }
+            
+            @Override
+            public void beforeCompletion() {
+                // A failing shard commit aborts the commit of this session
+                shardTransaction.commit();
+            }
+            
+            @Override
+            public void afterCompletion(boolean committed) {
+                rollbackQuietly(shardTransaction);
             }
+        });
+    }
+    
+    /**
+     * Runs the work on the child session of every shard in parallel.
+     */
+    private <R> List<R> scatter(Function<SessionImpl, R> work) {
+        List<SessionImpl> sessions = new ArrayList<>();
+        for (int i = 0; i < shardRouter.getShardCount(); i++) {
+            sessions.add(shardSession(i));
         }
-        
-        sql.append(" FROM ").append(metadata.getFullTableName());
-        return sql.toString();
+        return shardRouter.scatter(shard -> work.apply(sessions.get(shard)));
     }
     
-    private void setInsertParameters(PreparedStatement stmt, Object entity, EntityMetadata metadata) throws SQLException {
-        int paramIndex = 1;
-        // Set basic column values
-        for (ColumnMetadata column : metadata.getColumns().values()) {
-            if (column.isPrimaryKey() && column.getGenerationType() != null) {
-                continue; // Skip auto-generated primary keys
-            }
-            
-            Object value = column.getValue(entity);
-            stmt.setObject(paramIndex++, value);
+    private static <T> List<T> concat(List<List<T>> lists) {
+        List<T> results = new ArrayList<>();
+        for (List<T> list : lists) {
+            results.addAll(list);
         }
-        
-        // Set foreign key values for ManyToOne relationships
-        for (RelationshipMetadata relationship : metadata.getRelationships().values()) {
-            if (relationship.getRelationshipType() == RelationshipType.MANY_TO_ONE) {
-                String joinColumn = relationship.getJoinColumn();
-                if (joinColumn != null && !joinColumn.isEmpty()) {
-                    Object relatedEntity = relationship.getValue(entity);
-                    Object foreignKeyValue = null;
-                    
-                    if (relatedEntity != null) {
-                        // Get the primary key value from the related entity
-                        EntityMetadata relatedMetadata = getEntityMetadata(relationship.getTargetEntity());
-                        ColumnMetadata relatedPK = relatedMetadata.getPrimaryKey();
-                        if (relatedPK != null) {
-                            foreignKeyValue = relatedPK.getValue(relatedEntity);
-                        }
+        return results;
+    }
+    
+    private <T> long forEachChunkPerShard(Class<T> entityClass, int chunkSize, Consumer<List<T>> action,
+                                          ChunkProgressListener progressListener) {
+        long processed = 0;
+        int chunks = 0;
+        for (int i = 0; i < shardRouter.getShardCount(); i++) {
+            long processedBefore = processed;
+            int chunksBefore = chunks;
+            int[] shardChunks = new int[1];
+            processed += shardSession(i).forEachChunk(entityClass, chunkSize, action,
+                (chunkNumber, chunkRows, processedRows) -> {
+                    shardChunks[0] = chunkNumber;
+                    if (progressListener != null) {
+                        progressListener.onChunkProcessed(chunksBefore + chunkNumber, chunkRows,
+                            processedBefore + processedRows);
                     }
-                    
-                    stmt.setObject(paramIndex++, foreignKeyValue);
-                }
-            }
+                });
+            chunks += shardChunks[0];
         }
+        return processed;
     }
     
-    private void setUpdateParameters(PreparedStatement stmt, Object entity, EntityMetadata metadata) throws SQLException {
-        int paramIndex = 1;
-        
-        // Set values for non-primary key columns
-        for (ColumnMetadata column : metadata.getColumns().values()) {
-            if (column.isPrimaryKey()) {
-                continue;
+    /**
+     * Orders entities like the ORDER BY entries of a query, for merging shard results.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> Comparator<T> orderComparator(EntityMetadata metadata, List<String> orderBy) {
+        Comparator<T> comparator = null;
+        for (String entry : orderBy) {
+            int space = entry.lastIndexOf(' ');
+            String column = entry.substring(0, space);
+            boolean descending = entry.substring(space + 1).equalsIgnoreCase("DESC");
+            ColumnMetadata columnMetadata = findColumn(metadata, column.substring(column.lastIndexOf('.') + 1));
+            if (columnMetadata == null) {
+                throw new IllegalArgumentException("Cannot merge shard results on ORDER BY " + column
+                    + ": not a mapped column of " + metadata.getEntityClass().getSimpleName());
             }
             
-            Object value = column.getValue(entity);
-            stmt.setObject(paramIndex++, value);
+            Comparator<Comparable> values = Comparator.nullsFirst(Comparator.naturalOrder());
+            Comparator<T> next = Comparator.comparing(entity -> (Comparable) columnMetadata.getValue(entity),
+                descending ? values.reversed() : values);
+            comparator = comparator == null ? next : comparator.thenComparing(next);
         }
-        
-        // Set foreign key values for ManyToOne relationships
-        for (RelationshipMetadata relationship : metadata.getRelationships().values()) {
-            if (relationship.getRelationshipType() == RelationshipType.MANY_TO_ONE) {
-                String joinColumn = relationship.getJoinColumn();
-                if (joinColumn != null && !joinColumn.isEmpty()) {
-                    Object relatedEntity = relationship.getValue(entity);
-                    Object foreignKeyValue = null;
-                    
-                    if (relatedEntity != null) {
-                        // Get the primary key value from the related entity
-                        EntityMetadata relatedMetadata = getEntityMetadata(relationship.getTargetEntity());
-                        ColumnMetadata relatedPK = relatedMetadata.getPrimaryKey();
-                        if (relatedPK != null) {
-                            foreignKeyValue = relatedPK.getValue(relatedEntity);
-                        }
-                    }
-                    
-                    stmt.setObject(paramIndex++, foreignKeyValue);
-                }
+        return comparator;
+    }
+    
+    private static ColumnMetadata findColumn(EntityMetadata metadata, String name) {
+        for (Map.Entry<String, ColumnMetadata> column : metadata.getColumns().entrySet()) {
+            if (column.getKey().equals(name) || column.getValue().getColumnName().equalsIgnoreCase(name)) {
+                return column.getValue();
             }
         }
-        
-        // Set primary key value for WHERE clause
-        ColumnMetadata pkColumn = metadata.getPrimaryKey();
-        if (pkColumn != null) {
-            Object pkValue = pkColumn.getValue(entity);
-            stmt.setObject(paramIndex, pkValue);
+        return null;
+    }
+    
+    private void closeConnections() {
+        closeQuietly(connection);
+        connection = null;
+        closeQuietly(replicaConnection);
+        replicaConnection = null;
+    }
+    
+    private void closeQuietly(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                logger.warn("Error closing connection", e);
+            }
         }
     }
     
-    @SuppressWarnings("unchecked")
+    private void rollbackQuietly(Transaction tx) {
+        if (tx.isActive()) {
+            try {
+                tx.rollback();
+            } catch (RuntimeException e) {
+                logger.warn("Failed to roll back transaction", e);
+            }
+        }
+    }
+    
+    private EntityMetadata getEntityMetadata(Class<?> entityClass) {
+        return persister.getEntityMetadata(entityClass);
+    }
+    
     private <T> T mapResultSetToEntity(ResultSet rs, Class<T> entityClass, EntityMetadata metadata) throws SQLException {
         try {
-            T entity = entityClass.getDeclaredConstructor().newInstance();
-            
-            // Map basic columns
-            for (ColumnMetadata column : metadata.getColumns().values()) {
-                Object value = rs.getObject(column.getColumnName());
-                if (value != null) {
-                    column.setValue(entity, value);
-                }
-            }
+            T entity = persister.instantiate(rs, entityClass, metadata);
             
             // Load ManyToOne relationships
             for (RelationshipMetadata relationship : metadata.getRelationships().values()) {
@@ -581,11 +1015,11 @@ public class SessionImpl implements Session {
             }
             
             // Get the foreign key value from the result set
-            Object foreignKeyValue = rs.getObject(foreignKeyColumn);
+            Object foreignKeyValue = persister.readForeignKey(rs, foreignKeyColumn, relationship);
             if (foreignKeyValue != null) {
                 // Find the related entity by its primary key
                 Class<?> targetEntityClass = relationship.getTargetEntity();
-                Object relatedEntity = findById(targetEntityClass, foreignKeyValue);
+                Object relatedEntity = findRelated(targetEntityClass, foreignKeyValue);
                 
                 if (relatedEntity != null) {
                     // Set the relationship
@@ -597,4 +1031,18 @@ public class SessionImpl implements Session {
             logger.warn("Failed to load ManyToOne relationship: {}", relationship.getField().getName(), e);
         }
     }
+    
+    /**
+     * Finds the target of a relationship. A shard session finds targets that are not sharded
+     * through its parent, since the shard's copy of their table stays empty; shard sessions may
+     * map rows on several threads at once, so they take turns on the parent.
+     */
+    private Object findRelated(Class<?> targetClass, Object id) {
+        if (parent == null || getEntityMetadata(targetClass).isSharded()) {
+            return findById(targetClass, id);
+        }
+        synchronized (parent) {
+            return parent.findById(targetClass, id);
+        }
+    }
 }
@@ -0,0 +1,71 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Factory-wide registry of open sessions.
+ * Sessions register when opened and remove themselves when closed, so the factory
+ * can enumerate them and close any that are still open, whichever thread opened them.
+ */
+public class SessionRegistry {
+    
+    private static final Logger logger = LoggerFactory.getLogger(SessionRegistry.class);
+    
+    private final Set<AutoCloseable> openSessions = ConcurrentHashMap.newKeySet();
+    
+    void register(AutoCloseable session) {
+        openSessions.add(session);
+    }
+    
+    void unregister(AutoCloseable session) {
+        openSessions.remove(session);
+    }
+    
+    /**
+     * Gets a snapshot of the regular sessions that are currently open.
+     */
+    public List<Session> getOpenSessions() {
+        List<Session> sessions = new ArrayList<>();
+        for (AutoCloseable session : openSessions) {
+            if (session instanceof Session) {
+                sessions.add((Session) session);
+            }
+        }
+        return sessions;
+    }
+    
+    /**
+     * Gets the number of open sessions, including stateless sessions.
+     */
+    public int getOpenSessionCount() {
+        return openSessions.size();
+    }
+    
+    /**
+     * Closes every session that is still open.
+     *
+     * @return the number of sessions closed
+     */
+    public int closeAll() {
+        int closed = 0;
+        for (AutoCloseable session : new ArrayList<>(openSessions)) {
+            try {
+                session.close();
+                closed++;
+            } catch (Exception e) {
+                logger.warn("Error closing session", e);
+            }
+            openSessions.remove(session);
+        }
+        if (closed > 0) {
+            logger.info("Closed {} open session(s)", closed);
+        }
+        return closed;
+    }
+}
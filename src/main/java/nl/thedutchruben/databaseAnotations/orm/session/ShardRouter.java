@@ -0,0 +1,146 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import com.zaxxer.hikari.HikariDataSource;
+import nl.thedutchruben.databaseAnotations.orm.core.ColumnMetadata;
+import nl.thedutchruben.databaseAnotations.orm.core.EntityMetadata;
+import nl.thedutchruben.databaseAnotations.orm.util.ExecutorUtils;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.IntFunction;
+
+/**
+ * Maps entities annotated with {@code @ShardKey} to one of the configured shards by
+ * hashing the key, and runs scatter-gather work on all shards in parallel.
+ */
+public class ShardRouter {
+    
+    private final List<DataSource> shards;
+    private final EntityPersister persister;
+    private final ExecutorService executor;
+    
+    ShardRouter(List<DataSource> shards, EntityPersister persister) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+        this.persister = persister;
+        this.executor = ExecutorUtils.newFixedDaemonPool(shards.size(), "orm-shard");
+    }
+    
+    public int getShardCount() {
+        return shards.size();
+    }
+    
+    public DataSource getShard(int index) {
+        return shards.get(index);
+    }
+    
+    public List<DataSource> getShards() {
+        return shards;
+    }
+    
+    /**
+     * Gets the shard index for a shard key value. Integral numbers hash by value,
+     * so an Integer and a Long key land on the same shard.
+     */
+    public int shardForKey(Object key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Shard key must not be null");
+        }
+        int hash = isIntegral(key) ? Long.hashCode(((Number) key).longValue()) : key.hashCode();
+        return Math.floorMod(hash, shards.size());
+    }
+    
+    boolean isSharded(Class<?> entityClass) {
+        return persister.getEntityMetadata(entityClass).isSharded();
+    }
+    
+    /**
+     * Gets the shard an entity is stored on.
+     */
+    int shardFor(Object entity) {
+        EntityMetadata metadata = persister.getEntityMetadata(entity.getClass());
+        Object key = readField(metadata.getShardKeyField(), entity);
+        
+        // A relationship used as shard key routes by the related entity's primary key
+        if (key != null && !isIntegral(key) && persister.isEntity(key.getClass())) {
+            ColumnMetadata relatedPk = persister.getEntityMetadata(key.getClass()).getPrimaryKey();
+            key = relatedPk != null ? relatedPk.getValue(key) : null;
+        }
+        if (key == null) {
+            throw new IllegalArgumentException("Shard key " + metadata.getShardKeyField().getName()
+                + " of " + entity.getClass().getSimpleName() + " is not set");
+        }
+        return shardForKey(key);
+    }
+    
+    /**
+     * Gets the shard holding the entity with the given id, or -1 when the shard key is
+     * not the primary key and every shard has to be searched.
+     */
+    int shardForId(Class<?> entityClass, Object id) {
+        EntityMetadata metadata = persister.getEntityMetadata(entityClass);
+        ColumnMetadata pkColumn = metadata.getPrimaryKey();
+        if (pkColumn != null && pkColumn.getField().equals(metadata.getShardKeyField())) {
+            return shardForKey(id);
+        }
+        return -1;
+    }
+    
+    /**
+     * Runs the work for every shard index in parallel and returns the results in shard order.
+     */
+    <R> List<R> scatter(IntFunction<R> work) {
+        List<CompletableFuture<R>> futures = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            int shard = i;
+            futures.add(CompletableFuture.supplyAsync(() -> work.apply(shard), executor));
+        }
+        
+        List<R> results = new ArrayList<>();
+        try {
+            for (CompletableFuture<R> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("Shard query failed", cause);
+        }
+        return results;
+    }
+    
+    /**
+     * Stops the scatter threads and closes the shard pools that are managed by HikariCP.
+     */
+    void close() {
+        executor.shutdown();
+        for (DataSource shard : shards) {
+            if (shard instanceof HikariDataSource) {
+                ((HikariDataSource) shard).close();
+            }
+        }
+    }
+    
+    private static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+    
+    private static Object readField(Field field, Object entity) {
+        try {
+            return field.get(entity);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Failed to read shard key " + field.getName(), e);
+        }
+    }
+}
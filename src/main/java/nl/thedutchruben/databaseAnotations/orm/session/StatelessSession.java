@@ -0,0 +1,83 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import java.util.List;
+
+/**
+ * Session for bulk data pipelines.
+ * Keeps no identity map, does not cascade and never loads relationships:
+ * inserts, updates and deletes are queued on JDBC batches and flushed when
+ * the batch is full, when a different statement is issued, before reads and
+ * on commit, so memory use stays constant regardless of the number of rows.
+ */
+public interface StatelessSession extends AutoCloseable {
+    
+    /**
+     * Queues an insert of the entity.
+     * Generated keys are assigned once the batch containing the insert is executed.
+     */
+    <T> T insert(T entity);
+    
+    /**
+     * Queues an update of the entity.
+     */
+    <T> T update(T entity);
+    
+    /**
+     * Queues a delete of the entity.
+     */
+    <T> void delete(T entity);
+    
+    /**
+     * Loads an entity by its primary key, without relationships.
+     */
+    <T> T get(Class<T> entityClass, Object id);
+    
+    /**
+     * Executes a custom SQL query and returns the result list, without relationships.
+     */
+    <T> List<T> createQuery(String sql, Class<T> resultClass);
+    
+    /**
+     * Executes a native SQL update.
+     */
+    int executeUpdate(String sql);
+    
+    /**
+     * Begins a new transaction.
+     */
+    Transaction beginTransaction();
+    
+    /**
+     * Begins a new transaction with the given isolation level, read-only flag and
+     * statement timeout; the connection's own settings are restored when it completes.
+     */
+    Transaction beginTransaction(TransactionOptions options);
+    
+    /**
+     * Begins a nested transaction backed by a savepoint of the active transaction,
+     * or a regular transaction when none is active. Rolling the nested transaction
+     * back only undoes its own work.
+     */
+    Transaction beginNestedTransaction();
+    
+    /**
+     * Gets the current transaction.
+     */
+    Transaction getTransaction();
+    
+    /**
+     * Executes all queued statements.
+     */
+    void flush();
+    
+    /**
+     * Checks if the session is open.
+     */
+    boolean isOpen();
+    
+    /**
+     * Closes the session, flushing queued statements unless a transaction is still active.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,426 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import nl.thedutchruben.databaseAnotations.orm.core.ColumnMetadata;
+import nl.thedutchruben.databaseAnotations.orm.core.EntityMetadata;
+import nl.thedutchruben.databaseAnotations.orm.core.RelationshipMetadata;
+import nl.thedutchruben.databaseAnotations.orm.core.RelationshipType;
+import nl.thedutchruben.databaseAnotations.orm.dialect.Dialect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Default implementation of the StatelessSession interface.
+ * Consecutive operations that share the same SQL are collected on one JDBC batch;
+ * switching to a different statement executes the pending batch first so the
+ * original operation order is preserved.
+ */
+public class StatelessSessionImpl implements StatelessSession {
+    
+    private static final Logger logger = LoggerFactory.getLogger(StatelessSessionImpl.class);
+    
+    private final DataSource dataSource;
+    private final Dialect dialect;
+    private final EntityPersister persister;
+    private final int batchSize;
+    private Connection connection;
+    private TransactionImpl currentTransaction;
+    private boolean open = true;
+    private Runnable closeCallback;
+    private ShardRouter shardRouter;
+    
+    // Pending batch state
+    private PreparedStatement batchStatement;
+    private String batchSql;
+    private ColumnMetadata batchGeneratedKey;
+    private final List<Object> batchEntities = new ArrayList<>();
+    private int pendingCount;
+    
+    public StatelessSessionImpl(DataSource dataSource, Dialect dialect,
+                                Map<Class<?>, EntityMetadata> entityMetadataMap, int batchSize) {
+        this.dataSource = dataSource;
+        this.dialect = dialect;
+        this.persister = new EntityPersister(entityMetadataMap, dialect);
+        this.batchSize = Math.max(1, batchSize);
+    }
+    
+    /**
+     * Sets a callback invoked once when the session is closed.
+     */
+    void setCloseCallback(Runnable closeCallback) {
+        this.closeCallback = closeCallback;
+    }
+    
+    /**
+     * Sets the shard router, so entities with a shard key are rejected instead of
+     * being written to or read from the main database.
+     */
+    void setShardRouter(ShardRouter shardRouter) {
+        this.shardRouter = shardRouter;
+    }
+    
+    private EntityMetadata getEntityMetadata(Class<?> entityClass) {
+        EntityMetadata metadata = persister.getEntityMetadata(entityClass);
+        if (shardRouter != null && metadata.isSharded()) {
+            throw new UnsupportedOperationException("Stateless sessions are not supported for sharded entity "
+                + entityClass.getSimpleName());
+        }
+        return metadata;
+    }
+    
+    private Connection getConnection() throws SQLException {
+        if (connection == null || connection.isClosed()) {
+            connection = dataSource.getConnection();
+            connection.setAutoCommit(!isTransactionActive());
+        }
+        return connection;
+    }
+    
+    @Override
+    public <T> T insert(T entity) {
+        try {
+            EntityMetadata metadata = getEntityMetadata(entity.getClass());
+            ColumnMetadata pkColumn = metadata.getPrimaryKey();
+            boolean generatedKey = pkColumn != null && pkColumn.getGenerationType() != null;
+            
+            // A parent inserted earlier in this batch has no id yet; execute it before referencing it
+            if (hasUnresolvedReference(entity, metadata)) {
+                flush();
+            }
+            
+            String sql = persister.buildInsertSql(metadata);
+            if (generatedKey && !dialect.supportsBatchGeneratedKeys()) {
+                executeInsertImmediately(sql, entity, metadata, pkColumn);
+                return entity;
+            }
+            
+            PreparedStatement stmt = batchFor(sql, generatedKey ? pkColumn : null);
+            persister.setInsertParameters(stmt, entity, metadata);
+            addToBatch(stmt, entity);
+            return entity;
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to insert entity", e);
+        }
+    }
+    
+    @Override
+    public <T> T update(T entity) {
+        try {
+            EntityMetadata metadata = getEntityMetadata(entity.getClass());
+            PreparedStatement stmt = batchFor(persister.buildUpdateSql(metadata), null);
+            persister.setUpdateParameters(stmt, entity, metadata);
+            addToBatch(stmt, entity);
+            return entity;
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to update entity", e);
+        }
+    }
+    
+    @Override
+    public <T> void delete(T entity) {
+        try {
+            EntityMetadata metadata = getEntityMetadata(entity.getClass());
+            ColumnMetadata pkColumn = metadata.getPrimaryKey();
+            
+            if (pkColumn == null) {
+                throw new RuntimeException("Cannot delete entity without primary key");
+            }
+            
+            PreparedStatement stmt = batchFor(persister.buildDeleteSql(metadata), null);
+            persister.bind(stmt, 1, pkColumn, pkColumn.getValue(entity));
+            addToBatch(stmt, entity);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to delete entity", e);
+        }
+    }
+    
+    @Override
+    public <T> T get(Class<T> entityClass, Object id) {
+        flush();
+        try {
+            EntityMetadata metadata = getEntityMetadata(entityClass);
+            String sql = persister.buildSelectByIdSql(metadata);
+            
+            try (PreparedStatement stmt = prepare(sql, false)) {
+                persister.bind(stmt, 1, metadata.getPrimaryKey(), id);
+                
+                logger.debug("Executing SQL: {}", sql);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next() ? persister.instantiate(rs, entityClass, metadata) : null;
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to find entity by id", e);
+        }
+    }
+    
+    @Override
+    public <T> List<T> createQuery(String sql, Class<T> resultClass) {
+        flush();
+        try {
+            EntityMetadata metadata = getEntityMetadata(resultClass);
+            
+            try (PreparedStatement stmt = prepare(sql, false)) {
+                logger.debug("Executing SQL: {}", sql);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    List<T> results = new ArrayList<>();
+                    while (rs.next()) {
+                        results.add(persister.instantiate(rs, resultClass, metadata));
+                    }
+                    return results;
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to execute query", e);
+        }
+    }
+    
+    @Override
+    public int executeUpdate(String sql) {
+        flush();
+        try {
+            try (PreparedStatement stmt = prepare(sql, false)) {
+                logger.debug("Executing SQL: {}", sql);
+                return stmt.executeUpdate();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to execute update", e);
+        }
+    }
+    
+    @Override
+    public Transaction beginTransaction() {
+        return beginTransaction(TransactionOptions.defaults());
+    }
+    
+    @Override
+    public Transaction beginTransaction(TransactionOptions options) {
+        if (isTransactionActive()) {
+            throw new RuntimeException("Transaction already active");
+        }
+        
+        try {
+            flush();
+            currentTransaction = TransactionImpl.begin(getConnection(), options);
+            currentTransaction.registerSynchronization(new TransactionImpl.Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                    flush();
+                }
+                
+                @Override
+                public void beforeSavepoint() {
+                    flush();
+                }
+                
+                @Override
+                public void afterSavepointRollback(Savepoint savepoint) {
+                    discardBatch();
+                }
+                
+                @Override
+                public void afterCompletion(boolean committed) {
+                    if (!committed) {
+                        discardBatch();
+                    }
+                }
+            });
+            return currentTransaction;
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to begin transaction", e);
+        }
+    }
+    
+    @Override
+    public Transaction beginNestedTransaction() {
+        if (!isTransactionActive()) {
+            return beginTransaction();
+        }
+        return currentTransaction.beginNested();
+    }
+    
+    @Override
+    public Transaction getTransaction() {
+        return currentTransaction;
+    }
+    
+    @Override
+    public void flush() {
+        if (batchStatement == null) {
+            return;
+        }
+        
+        PreparedStatement stmt = batchStatement;
+        ColumnMetadata generatedKey = batchGeneratedKey;
+        List<Object> entities = new ArrayList<>(batchEntities);
+        String sql = batchSql;
+        resetBatch();
+        
+        try {
+            logger.debug("Executing batch of {}: {}", entities.size(), sql);
+            stmt.executeBatch();
+            
+            if (generatedKey != null) {
+                try (ResultSet rs = stmt.getGeneratedKeys()) {
+                    for (Object entity : entities) {
+                        if (!rs.next()) {
+                            break;
+                        }
+                        generatedKey.setValue(entity, persister.read(rs, 1, generatedKey));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to execute batch", e);
+        } finally {
+            closeQuietly(stmt);
+        }
+    }
+    
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+    
+    @Override
+    public void close() {
+        if (open) {
+            try {
+                if (isTransactionActive()) {
+                    currentTransaction.rollback();
+                } else {
+                    flush();
+                }
+            } finally {
+                open = false;
+                discardBatch();
+                
+                if (connection != null) {
+                    try {
+                        connection.close();
+                    } catch (SQLException e) {
+                        logger.warn("Error closing connection", e);
+                    }
+                }
+                
+                if (closeCallback != null) {
+                    closeCallback.run();
+                }
+            }
+        }
+    }
+    
+    // Helper methods
+    
+    /**
+     * Prepares a statement, applying the statement timeout of the active transaction.
+     */
+    private PreparedStatement prepare(String sql, boolean returnGeneratedKeys) throws SQLException {
+        PreparedStatement stmt = returnGeneratedKeys
+            ? getConnection().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+            : getConnection().prepareStatement(sql);
+        if (isTransactionActive()) {
+            int timeout = currentTransaction.getOptions().getStatementTimeoutSeconds();
+            if (timeout > 0) {
+                stmt.setQueryTimeout(timeout);
+            }
+        }
+        return stmt;
+    }
+    
+    private boolean isTransactionActive() {
+        return currentTransaction != null && currentTransaction.isActive();
+    }
+    
+    private PreparedStatement batchFor(String sql, ColumnMetadata generatedKey) throws SQLException {
+        if (batchStatement != null && !sql.equals(batchSql)) {
+            flush();
+        }
+        
+        if (batchStatement == null) {
+            batchStatement = prepare(sql, generatedKey != null);
+            batchSql = sql;
+            batchGeneratedKey = generatedKey;
+        }
+        return batchStatement;
+    }
+    
+    private void addToBatch(PreparedStatement stmt, Object entity) throws SQLException {
+        stmt.addBatch();
+        if (batchGeneratedKey != null) {
+            batchEntities.add(entity);
+        }
+        if (++pendingCount >= batchSize) {
+            flush();
+        }
+    }
+    
+    private void discardBatch() {
+        closeQuietly(batchStatement);
+        resetBatch();
+    }
+    
+    private void resetBatch() {
+        batchStatement = null;
+        batchSql = null;
+        batchGeneratedKey = null;
+        batchEntities.clear();
+        pendingCount = 0;
+    }
+    
+    private void executeInsertImmediately(String sql, Object entity, EntityMetadata metadata,
+                                          ColumnMetadata pkColumn) throws SQLException {
+        flush();
+        try (PreparedStatement stmt = prepare(sql, true)) {
+            persister.setInsertParameters(stmt, entity, metadata);
+            
+            logger.debug("Executing SQL: {}", sql);
+            stmt.executeUpdate();
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (rs.next()) {
+                    pkColumn.setValue(entity, persister.read(rs, 1, pkColumn));
+                }
+            }
+        }
+    }
+    
+    private boolean hasUnresolvedReference(Object entity, EntityMetadata metadata) {
+        if (batchEntities.isEmpty()) {
+            return false;
+        }
+        
+        for (RelationshipMetadata relationship : metadata.getRelationships().values()) {
+            if (relationship.getRelationshipType() == RelationshipType.MANY_TO_ONE) {
+                Object related = relationship.getValue(entity);
+                if (related != null && isPendingInBatch(related)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    private boolean isPendingInBatch(Object entity) {
+        for (Object pending : batchEntities) {
+            if (pending == entity) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void closeQuietly(Statement stmt) {
+        if (stmt != null) {
+            try {
+                stmt.close();
+            } catch (SQLException e) {
+                logger.warn("Error closing statement", e);
+            }
+        }
+    }
+}
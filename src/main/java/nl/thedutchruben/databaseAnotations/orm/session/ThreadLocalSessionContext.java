@@ -0,0 +1,51 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import java.util.function.Supplier;
+
+/**
+ * Binds one session per thread, opening it lazily on first use.
+ * Threads that call {@link SessionFactory#getCurrentSession()} outside of
+ * {@link SessionFactory#runWithSession} should {@link #unbind()} and close the
+ * session when done; sessions that are left open are closed with the factory.
+ */
+public class ThreadLocalSessionContext implements CurrentSessionContext {
+    
+    private final SessionFactory sessionFactory;
+    private final ThreadLocal<Session> currentSession = new ThreadLocal<>();
+    
+    public ThreadLocalSessionContext(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+    
+    @Override
+    public Session currentSession() {
+        Session session = currentSession.get();
+        if (session == null || !session.isOpen()) {
+            session = sessionFactory.openSession();
+            currentSession.set(session);
+        }
+        return session;
+    }
+    
+    @Override
+    public <R> R callWithSession(Session session, Supplier<R> work) {
+        Session previous = currentSession.get();
+        currentSession.set(session);
+        try {
+            return work.get();
+        } finally {
+            if (previous != null) {
+                currentSession.set(previous);
+            } else {
+                currentSession.remove();
+            }
+        }
+    }
+    
+    @Override
+    public Session unbind() {
+        Session session = currentSession.get();
+        currentSession.remove();
+        return session;
+    }
+}
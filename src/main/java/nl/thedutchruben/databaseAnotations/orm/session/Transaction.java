@@ -1,5 +1,7 @@
 package nl.thedutchruben.databaseAnotations.orm.session;
 
+import java.sql.Savepoint;
+
 /**
  * Interface for database transaction management.
  */
@@ -19,4 +21,24 @@ public interface Transaction {
      * Checks if the transaction is active.
      */
     boolean isActive();
+    
+    /**
+     * Marks the current point of the transaction so later work can be undone on its own.
+     */
+    Savepoint savepoint();
+    
+    /**
+     * Same as {@link #savepoint()}, with a name that shows up in database logs.
+     */
+    Savepoint savepoint(String name);
+    
+    /**
+     * Undoes all work done after the savepoint; the transaction stays active.
+     */
+    void rollbackTo(Savepoint savepoint);
+    
+    /**
+     * Releases a savepoint that is no longer needed, keeping its work.
+     */
+    void releaseSavepoint(Savepoint savepoint);
 }
@@ -1,46 +1,110 @@
 package nl.thedutchruben.databaseAnotations.orm.session;
 
+import nl.thedutchruben.databaseAnotations.orm.exception.TransactionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Default implementation of the Transaction interface.
+ * Transactions started with {@link #begin(Connection, TransactionOptions)} apply their
+ * options to the connection and put its original settings back on completion.
  */
 public class TransactionImpl implements Transaction {
     
     private static final Logger logger = LoggerFactory.getLogger(TransactionImpl.class);
     
     private final Connection connection;
+    private final TransactionOptions options;
+    private final List<Synchronization> synchronizations = new ArrayList<>();
     private boolean active = true;
     
+    // Connection settings to put back on completion
+    private boolean restoreAutoCommit;
+    private boolean restoreReadOnly;
+    private Integer originalIsolation;
+    
     public TransactionImpl(Connection connection) {
+        this(connection, TransactionOptions.defaults());
+    }
+    
+    private TransactionImpl(Connection connection, TransactionOptions options) {
         this.connection = connection;
+        this.options = options;
+    }
+    
+    /**
+     * Applies the options to the connection and starts a transaction on it.
+     */
+    static TransactionImpl begin(Connection connection, TransactionOptions options) throws SQLException {
+        TransactionImpl transaction = new TransactionImpl(connection, options);
+        try {
+            // Isolation and read-only must be changed before the transaction starts
+            if (options.getIsolation() != null
+                    && connection.getTransactionIsolation() != options.getIsolation().getJdbcLevel()) {
+                transaction.originalIsolation = connection.getTransactionIsolation();
+                connection.setTransactionIsolation(options.getIsolation().getJdbcLevel());
+            }
+            if (options.isReadOnly() && !connection.isReadOnly()) {
+                transaction.restoreReadOnly = true;
+                connection.setReadOnly(true);
+            }
+            if (connection.getAutoCommit()) {
+                transaction.restoreAutoCommit = true;
+                connection.setAutoCommit(false);
+            }
+        } catch (SQLException e) {
+            transaction.restoreConnection();
+            throw e;
+        }
+        return transaction;
+    }
+    
+    public TransactionOptions getOptions() {
+        return options;
+    }
+    
+    /**
+     * Registers a callback that is notified around the completion of this transaction.
+     */
+    public void registerSynchronization(Synchronization synchronization) {
+        synchronizations.add(synchronization);
     }
     
     @Override
     public void commit() {
         checkActive();
         try {
+            for (Synchronization synchronization : synchronizations) {
+                synchronization.beforeCompletion();
+            }
             connection.commit();
             active = false;
             logger.debug("Transaction committed");
         } catch (SQLException e) {
-            throw new RuntimeException("Failed to commit transaction", e);
+            throw TransactionException.commitFailed(e);
         }
+        afterCompletion(true);
     }
     
     @Override
     public void rollback() {
         checkActive();
+        // The transaction is over even if the rollback fails, e.g. on a broken connection
+        active = false;
         try {
             connection.rollback();
-            active = false;
             logger.debug("Transaction rolled back");
         } catch (SQLException e) {
-            throw new RuntimeException("Failed to rollback transaction", e);
+            throw TransactionException.rollbackFailed(e);
+        } finally {
+            afterCompletion(false);
         }
     }
     
@@ -49,9 +113,128 @@ public class TransactionImpl implements Transaction {
         return active;
     }
     
+    @Override
+    public Savepoint savepoint() {
+        return savepoint(null);
+    }
+    
+    @Override
+    public Savepoint savepoint(String name) {
+        checkActive();
+        for (Synchronization synchronization : synchronizations) {
+            synchronization.beforeSavepoint();
+        }
+        try {
+            Savepoint savepoint = name != null ? connection.setSavepoint(name) : connection.setSavepoint();
+            logger.debug("Savepoint created");
+            for (Synchronization synchronization : synchronizations) {
+                synchronization.afterSavepoint(savepoint);
+            }
+            return savepoint;
+        } catch (SQLException e) {
+            throw new TransactionException("Failed to create savepoint", e);
+        }
+    }
+    
+    @Override
+    public void rollbackTo(Savepoint savepoint) {
+        checkActive();
+        try {
+            connection.rollback(savepoint);
+            logger.debug("Transaction rolled back to savepoint");
+        } catch (SQLException e) {
+            throw new TransactionException("Failed to roll back to savepoint", e);
+        }
+        for (Synchronization synchronization : synchronizations) {
+            synchronization.afterSavepointRollback(savepoint);
+        }
+    }
+    
+    @Override
+    public void releaseSavepoint(Savepoint savepoint) {
+        checkActive();
+        try {
+            connection.releaseSavepoint(savepoint);
+        } catch (SQLFeatureNotSupportedException e) {
+            // The savepoint is released with the transaction instead
+            logger.debug("Driver does not support releasing savepoints");
+        } catch (SQLException e) {
+            throw new TransactionException("Failed to release savepoint", e);
+        }
+    }
+    
+    /**
+     * Starts a nested transaction backed by a savepoint of this transaction.
+     */
+    Transaction beginNested() {
+        return new NestedTransaction(this, savepoint());
+    }
+    
+    private void afterCompletion(boolean committed) {
+        restoreConnection();
+        for (Synchronization synchronization : synchronizations) {
+            synchronization.afterCompletion(committed);
+        }
+    }
+    
+    private void restoreConnection() {
+        try {
+            if (connection.isClosed()) {
+                return;
+            }
+            if (restoreAutoCommit) {
+                connection.setAutoCommit(true);
+            }
+            if (restoreReadOnly) {
+                connection.setReadOnly(false);
+            }
+            if (originalIsolation != null) {
+                connection.setTransactionIsolation(originalIsolation);
+            }
+        } catch (SQLException e) {
+            logger.warn("Failed to restore connection settings", e);
+        }
+    }
+    
     private void checkActive() {
         if (!active) {
-            throw new RuntimeException("Transaction is not active");
+            throw TransactionException.notActive();
+        }
+    }
+    
+    /**
+     * Callback notified around transaction completion.
+     */
+    public interface Synchronization {
+        
+        /**
+         * Called before the transaction is committed, e.g. to flush pending work.
+         */
+        default void beforeCompletion() {
+        }
+        
+        /**
+         * Called before a savepoint is created, e.g. to flush pending work that belongs before it.
+         */
+        default void beforeSavepoint() {
+        }
+        
+        /**
+         * Called after a savepoint has been created, e.g. to mirror it on other connections.
+         */
+        default void afterSavepoint(Savepoint savepoint) {
+        }
+        
+        /**
+         * Called after the transaction has been rolled back to a savepoint.
+         */
+        default void afterSavepointRollback(Savepoint savepoint) {
+        }
+        
+        /**
+         * Called after the transaction has been committed or rolled back.
+         */
+        default void afterCompletion(boolean committed) {
         }
     }
 }
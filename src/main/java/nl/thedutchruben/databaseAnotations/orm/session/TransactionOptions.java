@@ -0,0 +1,100 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import java.time.Duration;
+
+/**
+ * Settings applied to the connection for the duration of a transaction.
+ * Anything not set keeps the pooled connection's default.
+ */
+public class TransactionOptions {
+    
+    private static final TransactionOptions DEFAULTS = builder().build();
+    
+    private final IsolationLevel isolation;
+    private final boolean readOnly;
+    private final Duration statementTimeout;
+    
+    private TransactionOptions(Builder builder) {
+        this.isolation = builder.isolation;
+        this.readOnly = builder.readOnly;
+        this.statementTimeout = builder.statementTimeout;
+    }
+    
+    /**
+     * Gets options that leave the connection settings untouched.
+     */
+    public static TransactionOptions defaults() {
+        return DEFAULTS;
+    }
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    /**
+     * Gets the isolation level, or null to keep the connection default.
+     */
+    public IsolationLevel getIsolation() {
+        return isolation;
+    }
+    
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+    
+    /**
+     * Gets the maximum time each statement in the transaction may run, or null for no limit.
+     */
+    public Duration getStatementTimeout() {
+        return statementTimeout;
+    }
+    
+    /**
+     * Gets the statement timeout as JDBC query timeout in whole seconds, rounded up; 0 means no limit.
+     */
+    public int getStatementTimeoutSeconds() {
+        if (statementTimeout == null) {
+            return 0;
+        }
+        long millis = statementTimeout.toMillis();
+        return (int) Math.min(Integer.MAX_VALUE, (millis + 999) / 1000);
+    }
+    
+    /**
+     * Builder for transaction options.
+     */
+    public static class Builder {
+        private IsolationLevel isolation;
+        private boolean readOnly;
+        private Duration statementTimeout;
+        
+        public Builder isolation(IsolationLevel isolation) {
+            this.isolation = isolation;
+            return this;
+        }
+        
+        /**
+         * Marks the transaction read-only, letting the database skip write bookkeeping.
+         */
+        public Builder readOnly() {
+            return readOnly(true);
+        }
+        
+        public Builder readOnly(boolean readOnly) {
+            this.readOnly = readOnly;
+            return this;
+        }
+        
+        public Builder statementTimeout(Duration statementTimeout) {
+            if (statementTimeout != null && (statementTimeout.isNegative() || statementTimeout.isZero())) {
+                throw new IllegalArgumentException("Statement timeout must be positive: " + statementTimeout);
+            }
+            this.statementTimeout = statementTimeout;
+            return this;
+        }
+        
+        public TransactionOptions build() {
+            return new TransactionOptions(this);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import com.zaxxer.hikari.HikariDataSource;
+import nl.thedutchruben.databaseAnotations.orm.core.EntityMetadata;
+import nl.thedutchruben.databaseAnotations.orm.dialect.Dialect;
+import nl.thedutchruben.databaseAnotations.orm.exception.MappingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Startup warm-up for a session factory.
+ * Opens pooled connections up to the pool's minimum idle size, prepares every entity's
+ * CRUD statements on each of them so drivers that cache prepared statements start warm,
+ * and optionally hydrates sample rows in a loop so the JIT compiles the mapping code
+ * before the first request arrives.
+ */
+final class WarmUp {
+    
+    private static final Logger logger = LoggerFactory.getLogger(WarmUp.class);
+    
+    /**
+     * Rows loaded per entity for the mapping loop.
+     */
+    private static final int SAMPLE_ROWS = 100;
+    
+    private final SessionFactoryImpl sessionFactory;
+    private final Dialect dialect;
+    private final boolean validate;
+    private final int mappingIterations;
+    private final List<String> problems = new ArrayList<>();
+    private final Set<String> invalidSql = new LinkedHashSet<>();
+    private int connections;
+    private int statements;
+    
+    WarmUp(SessionFactoryImpl sessionFactory, Dialect dialect, boolean validate, int mappingIterations) {
+        this.sessionFactory = sessionFactory;
+        this.dialect = dialect;
+        this.validate = validate;
+        this.mappingIterations = mappingIterations;
+    }
+    
+    /**
+     * Runs the warm-up.
+     *
+     * @throws MappingException if validation is enabled and a statement does not match the schema
+     */
+    void run() {
+        long start = System.nanoTime();
+        
+        warmDataSource(sessionFactory.getDataSource());
+        ReplicaRouter replicaRouter = sessionFactory.getReplicaRouter();
+        if (replicaRouter != null) {
+            for (DataSource replica : replicaRouter.getReplicas()) {
+                warmDataSource(replica);
+            }
+        }
+        
+        if (validate && !problems.isEmpty()) {
+            throw MappingException.statementsInvalid(problems);
+        }
+        for (String problem : problems) {
+            logger.warn("Warm-up: {}", problem);
+        }
+        
+        if (mappingIterations > 0) {
+            warmMappers();
+        }
+        
+        logger.info("Warm-up finished in {} ms: {} connections, {} statements prepared",
+            (System.nanoTime() - start) / 1_000_000, connections, statements);
+    }
+    
+    private void warmDataSource(DataSource dataSource) {
+        // Hold the connections at the same time so the pool has to open new ones
+        int target = dataSource instanceof HikariDataSource
+            ? Math.max(1, Math.min(((HikariDataSource) dataSource).getMinimumIdle(),
+                ((HikariDataSource) dataSource).getMaximumPoolSize()))
+            : 1;
+        
+        List<Connection> borrowed = new ArrayList<>();
+        try {
+            for (int i = 0; i < target; i++) {
+                borrowed.add(dataSource.getConnection());
+            }
+            for (Connection connection : borrowed) {
+                prepareStatements(connection);
+                connections++;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to open connections for warm-up", e);
+        } finally {
+            for (Connection connection : borrowed) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    logger.warn("Error closing connection", e);
+                }
+            }
+        }
+    }
+    
+    private void prepareStatements(Connection connection) {
+        EntityPersister persister = sessionFactory.getPersister();
+        for (Map.Entry<Class<?>, EntityMetadata> entry : sessionFactory.getEntityMetadataMap().entrySet()) {
+            EntityMetadata metadata = entry.getValue();
+            
+            // The select lists every mapped column, so describing it checks the mapping against the table
+            prepare(connection, entry.getKey(), persister.buildSelectAllSql(metadata), false, true);
+            prepare(connection, entry.getKey(), persister.buildInsertSql(metadata), true, false);
+            if (metadata.getPrimaryKey() != null) {
+                prepare(connection, entry.getKey(), persister.buildSelectByIdSql(metadata), false, true);
+                prepare(connection, entry.getKey(), persister.buildUpdateSql(metadata), false, false);
+                prepare(connection, entry.getKey(), persister.buildDeleteSql(metadata), false, false);
+            }
+        }
+    }
+    
+    private void prepare(Connection connection, Class<?> entityClass, String sql,
+                         boolean returnGeneratedKeys, boolean query) {
+        if (invalidSql.contains(sql)) {
+            return;
+        }
+        
+        try (PreparedStatement stmt = returnGeneratedKeys
+                ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                : connection.prepareStatement(sql)) {
+            // Some drivers only parse the statement on the server when it is described or executed;
+            // insert, update and delete have no result columns, so their parameters are described instead
+            if (query) {
+                stmt.getMetaData();
+            } else {
+                stmt.getParameterMetaData();
+            }
+            statements++;
+        } catch (SQLException e) {
+            invalidSql.add(sql);
+            problems.add(entityClass.getSimpleName() + ": " + e.getMessage() + " [" + sql + "]");
+        }
+    }
+    
+    private void warmMappers() {
+        EntityPersister persister = sessionFactory.getPersister();
+        try (Connection connection = sessionFactory.getDataSource().getConnection()) {
+            for (Map.Entry<Class<?>, EntityMetadata> entry : sessionFactory.getEntityMetadataMap().entrySet()) {
+                String selectAll = persister.buildSelectAllSql(entry.getValue());
+                if (invalidSql.contains(selectAll)) {
+                    continue;
+                }
+                String sql = dialect.getLimitString(selectAll, SAMPLE_ROWS);
+                
+                // Map from the driver's own result set, the type mappings read through typed
+                // accessors that disconnected row sets do not implement
+                int rows = 0;
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    for (int i = 0; i < mappingIterations; i++) {
+                        rows = 0;
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            while (rs.next()) {
+                                persister.instantiate(rs, entry.getKey(), entry.getValue());
+                                rows++;
+                            }
+                        }
+                        if (rows == 0) {
+                            break;
+                        }
+                    }
+                }
+                if (rows == 0) {
+                    logger.debug("Warm-up: no rows to map for {}", entry.getKey().getSimpleName());
+                    continue;
+                }
+                
+                logger.debug("Warm-up: mapped {} rows of {} {} times",
+                    rows, entry.getKey().getSimpleName(), mappingIterations);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to warm up entity mapping", e);
+        }
+    }
+}
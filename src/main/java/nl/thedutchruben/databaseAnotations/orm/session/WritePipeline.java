@@ -0,0 +1,218 @@
+package nl.thedutchruben.databaseAnotations.orm.session;
+
+import nl.thedutchruben.databaseAnotations.orm.core.ColumnMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Group-commits inserts submitted by many threads.
+ * Entities wait in a bounded queue until a single writer thread picks up to
+ * {@code maxBatch} of them, at the latest one flush interval after the first one
+ * arrived, and inserts them as one JDBC batch in one transaction. Each caller's
+ * future completes with the id of its entity once the transaction has committed.
+ * When a group fails, its rows are retried one transaction each, so only the
+ * rows that are actually invalid fail.
+ * With the SQLite single writer, sessions send their inserts outside transactions here too.
+ */
+public class WritePipeline implements AutoCloseable {
+    
+    private static final Logger logger = LoggerFactory.getLogger(WritePipeline.class);
+    
+    private final SessionFactoryImpl sessionFactory;
+    private final int maxBatch;
+    private final long flushIntervalNanos;
+    private final int capacity;
+    private final Queue<PendingWrite> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Thread writer;
+    private volatile boolean closed;
+    
+    WritePipeline(SessionFactoryImpl sessionFactory, int maxBatch, long flushIntervalMillis, int capacity) {
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("Max batch must be positive: " + maxBatch);
+        }
+        if (capacity < maxBatch) {
+            throw new IllegalArgumentException("Queue capacity must be at least the max batch: " + capacity);
+        }
+        this.sessionFactory = sessionFactory;
+        this.maxBatch = maxBatch;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, flushIntervalMillis));
+        this.capacity = capacity;
+        this.writer = new Thread(this::run, "orm-write-pipeline");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+    
+    /**
+     * Queues the entity for insertion. The future completes with the entity's id after
+     * the group it was written in has committed, or exceptionally if it could not be written.
+     * When the queue is full the future fails immediately with a {@link RejectedExecutionException}.
+     */
+    public CompletableFuture<Object> submit(Object entity) {
+        if (closed) {
+            throw new IllegalStateException("Write pipeline is closed");
+        }
+        // Fail fast on unmapped classes instead of failing a whole group later
+        ColumnMetadata pkColumn = sessionFactory.getPersister().getEntityMetadata(entity.getClass()).getPrimaryKey();
+        if (sessionFactory.isSharded(entity.getClass())) {
+            throw new UnsupportedOperationException("The write pipeline does not support sharded entity "
+                + entity.getClass().getSimpleName());
+        }
+        
+        // Reserve a slot first so the queue never grows beyond its capacity
+        int queued = size.incrementAndGet();
+        if (queued > capacity) {
+            size.decrementAndGet();
+            return CompletableFuture.failedFuture(
+                new RejectedExecutionException("Write pipeline queue is full (" + capacity + " rows)"));
+        }
+        
+        PendingWrite write = new PendingWrite(entity, pkColumn);
+        queue.add(write);
+        // close() may have drained the queue after the check above; a row still in it would never be written
+        if (closed && queue.remove(write)) {
+            size.decrementAndGet();
+            write.fail(new IllegalStateException("Write pipeline is closed"));
+            return write.future;
+        }
+        // Wake the writer for the first row of a group and as soon as a full group is waiting
+        if (queued == 1 || queued >= maxBatch) {
+            LockSupport.unpark(writer);
+        }
+        return write.future;
+    }
+    
+    /**
+     * Gets the number of rows waiting to be written.
+     */
+    public int getQueueSize() {
+        return size.get();
+    }
+    
+    public boolean isClosed() {
+        return closed;
+    }
+    
+    /**
+     * Stops accepting rows and waits until the queued rows have been written.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        // Rows submitted while the writer was shutting down
+        PendingWrite write;
+        while ((write = queue.poll()) != null) {
+            write.future.completeExceptionally(new IllegalStateException("Write pipeline is closed"));
+        }
+    }
+    
+    private void run() {
+        List<PendingWrite> group = new ArrayList<>(maxBatch);
+        while (!closed || size.get() > 0) {
+            if (size.get() == 0) {
+                LockSupport.park(this);
+                continue;
+            }
+            if (!closed && size.get() < maxBatch && flushIntervalNanos > 0) {
+                // Give other writers the flush interval to join this group
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+            
+            PendingWrite write;
+            while (group.size() < maxBatch && (write = queue.poll()) != null) {
+                group.add(write);
+            }
+            size.addAndGet(-group.size());
+            
+            if (!group.isEmpty()) {
+                writeGroup(group);
+                group.clear();
+            }
+        }
+    }
+    
+    private void writeGroup(List<PendingWrite> group) {
+        try {
+            insert(group);
+        } catch (RuntimeException e) {
+            if (group.size() == 1) {
+                group.get(0).fail(e);
+                return;
+            }
+            logger.warn("Group commit of {} rows failed, writing them one by one: {}", group.size(), e.getMessage());
+            for (PendingWrite write : group) {
+                try {
+                    insert(Collections.singletonList(write));
+                } catch (RuntimeException rowFailure) {
+                    write.fail(rowFailure);
+                }
+            }
+            return;
+        }
+        logger.debug("Group committed {} rows", group.size());
+    }
+    
+    private void insert(List<PendingWrite> group) {
+        // The pipeline is a single writer already, so it does not compete for bulkhead permits
+        try (StatelessSession session = sessionFactory.createStatelessSession(false)) {
+            Transaction tx = session.beginTransaction();
+            for (PendingWrite write : group) {
+                session.insert(write.entity);
+            }
+            tx.commit();
+        } catch (RuntimeException e) {
+            // Ids generated by the rolled back inserts are not valid
+            group.forEach(PendingWrite::resetId);
+            throw e;
+        }
+        group.forEach(PendingWrite::complete);
+    }
+    
+    private static final class PendingWrite {
+        private final Object entity;
+        private final ColumnMetadata pkColumn;
+        private final Object originalId;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        
+        PendingWrite(Object entity, ColumnMetadata pkColumn) {
+            this.entity = entity;
+            this.pkColumn = pkColumn;
+            this.originalId = pkColumn != null ? pkColumn.getValue(entity) : null;
+        }
+        
+        void complete() {
+            future.complete(pkColumn != null ? pkColumn.getValue(entity) : null);
+        }
+        
+        void fail(Throwable error) {
+            future.completeExceptionally(error);
+        }
+        
+        void resetId() {
+            if (pkColumn != null && pkColumn.getGenerationType() != null) {
+                pkColumn.setValue(entity, originalId);
+            }
+        }
+    }
+}
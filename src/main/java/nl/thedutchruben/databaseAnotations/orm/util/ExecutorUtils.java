@@ -0,0 +1,62 @@
+package nl.thedutchruben.databaseAnotations.orm.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Utility class for creating executors used by the ORM.
+ */
+public class ExecutorUtils {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ExecutorUtils.class);
+    
+    private ExecutorUtils() {
+        // Utility class - prevent instantiation
+    }
+    
+    /**
+     * Creates an executor that starts a virtual thread per task when the runtime supports it (Java 21+),
+     * falling back to a cached pool of daemon platform threads on older runtimes.
+     */
+    public static ExecutorService newVirtualThreadExecutor(String threadNamePrefix) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            logger.debug("Virtual threads not available, using a cached thread pool for {}", threadNamePrefix);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Failed to create virtual thread executor, using a cached thread pool", e);
+        }
+        return Executors.newCachedThreadPool(daemonThreadFactory(threadNamePrefix));
+    }
+    
+    /**
+     * Creates a fixed-size pool of daemon threads.
+     */
+    public static ExecutorService newFixedDaemonPool(int threads, String threadNamePrefix) {
+        return Executors.newFixedThreadPool(threads, daemonThreadFactory(threadNamePrefix));
+    }
+    
+    /**
+     * Creates a single-threaded scheduler running on a daemon thread.
+     */
+    public static ScheduledExecutorService newDaemonScheduler(String threadNamePrefix) {
+        return Executors.newSingleThreadScheduledExecutor(daemonThreadFactory(threadNamePrefix));
+    }
+    
+    private static ThreadFactory daemonThreadFactory(String threadNamePrefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, threadNamePrefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
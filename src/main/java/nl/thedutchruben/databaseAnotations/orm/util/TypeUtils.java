@@ -1,12 +1,16 @@
 package nl.thedutchruben.databaseAnotations.orm.util;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.sql.Date;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.util.UUID;
 
 /**
  * Utility class for type conversions between Java and SQL types.
@@ -38,6 +42,10 @@ public class TypeUtils {
                type == LocalDate.class ||
                type == LocalTime.class ||
                type == LocalDateTime.class ||
+               type == OffsetDateTime.class ||
+               type == Instant.class ||
+               type == UUID.class ||
+               type == byte[].class ||
                type.isEnum();
     }
     
@@ -115,7 +123,13 @@ public class TypeUtils {
             } else if (targetType == Byte.class || targetType == byte.class) {
                 return num.byteValue();
             } else if (targetType == BigDecimal.class) {
-                return BigDecimal.valueOf(num.doubleValue());
+                // Going through double would round integers above 2^53 and decimal fractions
+                if (num instanceof BigInteger) {
+                    return new BigDecimal((BigInteger) num);
+                } else if (num instanceof Long || num instanceof Integer || num instanceof Short || num instanceof Byte) {
+                    return BigDecimal.valueOf(num.longValue());
+                }
+                return new BigDecimal(num.toString());
             }
         }
         